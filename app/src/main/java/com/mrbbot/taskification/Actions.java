@@ -2,5 +2,8 @@ package com.mrbbot.taskification;
 
 public enum Actions {
     START,
-    STOP
+    STOP,
+    SYNC,
+    RENDER,
+    COMPLETE
 }
@@ -0,0 +1,108 @@
+package com.mrbbot.taskification;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static com.mrbbot.taskification.ForegroundService.SP_PENDING_COMPLETIONS_KEY;
+
+// tasks completed from the notification that haven't been sent to the API yet, persisted so
+// completions made just before the process dies aren't lost
+class CompletionQueue {
+    // completions are stored one per line as "list ID<tab>task ID"
+    private static final char FIELD_SEPARATOR = '\t';
+    private static final char COMPLETION_SEPARATOR = '\n';
+
+    private static CompletionQueue instance;
+
+    static synchronized CompletionQueue get(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = new CompletionQueue(appContext.getSharedPreferences(appContext.getString(R.string.preference_file_key), Context.MODE_PRIVATE));
+        }
+        return instance;
+    }
+
+    private final SharedPreferences prefs;
+    // map mapping list ID to the IDs of tasks in it waiting to be completed
+    private final Map<String, Set<String>> pending = new LinkedHashMap<>();
+
+    CompletionQueue(SharedPreferences prefs) {
+        this.prefs = prefs;
+        String value = prefs.getString(SP_PENDING_COMPLETIONS_KEY, "");
+        for (String line : value.split(String.valueOf(COMPLETION_SEPARATOR))) {
+            int separator = line.indexOf(FIELD_SEPARATOR);
+            if (separator < 0) continue;
+            addPending(line.substring(0, separator), line.substring(separator + 1));
+        }
+    }
+
+    private void addPending(String listId, String taskId) {
+        Set<String> taskIds = pending.get(listId);
+        if (taskIds == null) {
+            taskIds = new LinkedHashSet<>();
+            pending.put(listId, taskIds);
+        }
+        taskIds.add(taskId);
+    }
+
+    private void save() {
+        StringBuilder value = new StringBuilder();
+        for (Map.Entry<String, Set<String>> entry : pending.entrySet()) {
+            for (String taskId : entry.getValue()) {
+                if (value.length() > 0) value.append(COMPLETION_SEPARATOR);
+                value.append(entry.getKey()).append(FIELD_SEPARATOR).append(taskId);
+            }
+        }
+        prefs.edit().putString(SP_PENDING_COMPLETIONS_KEY, value.toString()).apply();
+    }
+
+    synchronized void add(String listId, String taskId) {
+        addPending(listId, taskId);
+        save();
+    }
+
+    synchronized void remove(String listId, String taskId) {
+        Set<String> taskIds = pending.get(listId);
+        if (taskIds == null || !taskIds.remove(taskId)) return;
+        if (taskIds.isEmpty()) pending.remove(listId);
+        save();
+    }
+
+    synchronized boolean isPending(String listId, String taskId) {
+        Set<String> taskIds = pending.get(listId);
+        return taskIds != null && taskIds.contains(taskId);
+    }
+
+    @NonNull
+    synchronized Set<String> getPending(String listId) {
+        Set<String> taskIds = pending.get(listId);
+        return taskIds == null ? Collections.<String>emptySet() : new HashSet<>(taskIds);
+    }
+
+    @NonNull
+    synchronized Map<String, Set<String>> getAll() {
+        Map<String, Set<String>> all = new LinkedHashMap<>();
+        for (Map.Entry<String, Set<String>> entry : pending.entrySet()) {
+            all.put(entry.getKey(), new LinkedHashSet<>(entry.getValue()));
+        }
+        return all;
+    }
+
+    synchronized boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    synchronized void clear() {
+        pending.clear();
+        prefs.edit().remove(SP_PENDING_COMPLETIONS_KEY).apply();
+    }
+}
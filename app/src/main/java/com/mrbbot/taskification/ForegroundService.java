@@ -1,34 +1,93 @@
 package com.mrbbot.taskification;
 
+import android.app.AlarmManager;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
+import android.content.BroadcastReceiver;
+import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.text.Spannable;
+import android.text.SpannableString;
+import android.text.style.ForegroundColorSpan;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 import androidx.core.content.ContextCompat;
 
+import com.mrbbot.taskification.core.DueDateLabeller;
+import com.mrbbot.taskification.core.SyncMetrics;
+import com.mrbbot.taskification.core.Task;
+import com.mrbbot.taskification.core.TaskFormatter;
+import com.mrbbot.taskification.core.TaskIndex;
+import com.mrbbot.taskification.core.TaskLineRenderer;
+import com.mrbbot.taskification.core.TaskQuery;
+import com.mrbbot.taskification.core.TaskTreeBuilder;
+
+import java.io.FileDescriptor;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ForegroundService extends Service implements Runnable {
     private static final String TAG = "TaskificationService";
     private static final String NOTIFICATION_CHANNEL_ID = "ForegroundServiceChannel";
+    private static final String NOTIFICATION_GROUP = "Tasks";
     private static final int NOTIFICATION_ID = 1;
+    // per list notifications are told apart by their tag, which is the list ID
+    private static final int LIST_NOTIFICATION_ID = 2;
+
+    // the inbox style only shows a handful of lines, so only render those
+    private static final TaskLineRenderer RENDERER = new TaskLineRenderer(6, 100, 400, 120);
+
+    private static final long LIST_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+    // sync triggers arriving this soon after another, e.g. from the activity starting up, share a sync
+    private static final long SYNC_COALESCE_WINDOW_MS = 500;
 
+    // "Done" actions are shown for the first few tasks, notifications can only show three actions
+    private static final int MAX_DONE_ACTIONS = 3;
+    // completions made within this long of each other are sent to the API together
+    private static final long COMPLETION_FLUSH_WINDOW_MS = TimeUnit.SECONDS.toMillis(3);
+    private static final String EXTRA_LIST_ID = "list_id";
+    private static final String EXTRA_TASK_ID = "task_id";
+
+    public static final String SP_LISTS_KEY = "lists";
+    public static final String SP_PENDING_COMPLETIONS_KEY = "pending_completions";
+    public static final String SP_TASK_LISTS_CACHE_KEY = "task_lists_cache";
+    public static final String SP_TASK_LISTS_CACHED_AT_KEY = "task_lists_cached_at";
+    public static final String SP_VIEW_DUE_DAYS_KEY = "view_due_days";
+    public static final String SP_VIEW_TEXT_KEY = "view_text";
+    public static final String SP_VIEW_TOP_LEVEL_KEY = "view_top_level";
+    public static final String SP_VIEW_SORT_KEY = "view_sort";
+    public static final String SP_REMINDERS_KEY = "reminders";
+    // single list selection, replaced by SP_LISTS_KEY
     public static final String SP_LIST_ID_KEY = "list_id";
     public static final String SP_LIST_TITLE_KEY = "list_title";
 
@@ -46,6 +105,15 @@ public class ForegroundService extends Service implements Runnable {
             if (Actions.STOP.name().equals(action)) {
                 stopService();
                 return START_STICKY;
+            } else if (Actions.SYNC.name().equals(action)) {
+                requestSync();
+                return START_STICKY;
+            } else if (Actions.RENDER.name().equals(action)) {
+                rerender();
+                return START_STICKY;
+            } else if (Actions.COMPLETE.name().equals(action)) {
+                completeTask(intent.getStringExtra(EXTRA_LIST_ID), intent.getStringExtra(EXTRA_TASK_ID));
+                return START_STICKY;
             }
         } else {
             Log.d(TAG, "Received start command without action");
@@ -58,63 +126,582 @@ public class ForegroundService extends Service implements Runnable {
     public void onCreate() {
         super.onCreate();
         Log.d(TAG, "Creating...");
-        startForeground(NOTIFICATION_ID, createNotification(null,null));
+        createNotificationChannel();
+        scheduler = new SyncScheduler(this);
+        completionQueue = CompletionQueue.get(this);
+        MemoryBudget.register(MemoryBudget.Priority.RENDERED, renderedTrimmable);
+        MemoryBudget.register(MemoryBudget.Priority.SNAPSHOTS, snapshotsTrimmable);
+        reminders = ReminderScheduler.get(this);
+        registerReceiver(screenOnReceiver, new IntentFilter(Intent.ACTION_SCREEN_ON));
+        IntentFilter dayChangeFilter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+        dayChangeFilter.addAction(Intent.ACTION_TIME_CHANGED);
+        dayChangeFilter.addAction(Intent.ACTION_DATE_CHANGED);
+        registerReceiver(dayChangeReceiver, dayChangeFilter);
+
+        // show the last fetched tasks straight away while waiting for the first sync
+        SharedPreferences prefs = getSharedPreferences(getString(R.string.preference_file_key), MODE_PRIVATE);
+        NotificationManager manager = ContextCompat.getSystemService(this, NotificationManager.class);
+        synchronized (listStates) {
+            DueDateLabeller labeller = getLabeller();
+            query = TaskView.load(prefs);
+            for (TasksAPI.TaskList list : SelectedTaskLists.load(prefs)) {
+                ListState state = new ListState(list);
+                listStates.put(list.id, state);
+                TaskSnapshotStore.Snapshot snapshot = TaskSnapshotStore.read(this, list.id);
+                if (snapshot != null && manager != null) {
+                    Log.d(TAG, "Restored snapshot for " + list.id);
+                    state.savedTasks = snapshot.tasks;
+                    renderList(manager, state, labeller);
+                }
+            }
+            summaryFingerprint = summaryFingerprint();
+            startForeground(NOTIFICATION_ID, createSummaryNotification());
+        }
+        scheduleDayRollover();
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
         Log.d(TAG, "Destroying...");
+        unregisterReceiver(screenOnReceiver);
+        unregisterReceiver(dayChangeReceiver);
+        cancelDayRollover();
+        MemoryBudget.unregister(renderedTrimmable);
+        MemoryBudget.unregister(snapshotsTrimmable);
         stopService();
     }
 
-    private ScheduledExecutorService executorService;
-    private ScheduledFuture<?> scheduledFuture;
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        Log.d(TAG, "Trimming memory at level " + level);
+        MemoryBudget.onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        Log.d(TAG, "Low on memory");
+        MemoryBudget.onLowMemory();
+    }
+
+    // adb shell dumpsys activity service com.mrbbot.taskification/.ForegroundService
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        SyncMetrics.dump(writer);
+    }
+
+    private static class ListState {
+        final TasksAPI.TaskList list;
+        List<Task> savedTasks;
+        Integer renderedFingerprint;
+        // what was last rendered, trees are shared between syncs so an unchanged list is the same
+        // instance and doesn't need rendering again
+        List<Task> renderedTasks;
+        DueDateLabeller renderedLabeller;
+        TaskQuery renderedQuery;
+        // index of the saved tasks for filtered views, built in the background when they change
+        TaskIndex index;
+        List<Task> indexedTasks;
+        // the tasks an index is being built for, so the same tree isn't queued twice
+        List<Task> indexingTasks;
+
+        ListState(TasksAPI.TaskList list) {
+            this.list = list;
+        }
+
+        // the tasks to show, queried from the saved tasks without fetching anything, or null if
+        // the view is filtered and the saved tasks haven't been indexed yet
+        @Nullable
+        List<Task> getView(TaskQuery query, DueDateLabeller labeller) {
+            if (query.isAll()) return savedTasks;
+            if (index == null || indexedTasks != savedTasks) return null;
+            return index.query(query, labeller.getToday());
+        }
+
+        void trim() {
+            index = null;
+            indexedTasks = null;
+        }
+    }
+
+    // map mapping list ID to the state of that list's notification, in selection order
+    private final Map<String, ListState> listStates = new LinkedHashMap<>();
+    private PendingIntent contentIntent;
+    private Integer summaryFingerprint;
+    // only accessed with the list states locked
+    private DueDateLabeller labeller;
+    private TaskQuery query = TaskQuery.ALL;
+
+    private SyncScheduler scheduler;
+    // syncs and completion flushes run one at a time, lists are fetched in parallel on the engine
+    private final TaskEngine.SerialExecutor syncExecutor = TaskEngine.get().newSerialExecutor(TaskEngine.Lane.SYNC);
+    // whether syncing has been started, only accessed on the main thread
+    private boolean started;
+    private volatile boolean stopped;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private CompletionQueue completionQueue;
+    private ReminderScheduler reminders;
+    // reminder updates mean prefs writes and alarm manager calls, so they're made off the list
+    // states lock, queued in the order the trees were saved
+    private final TaskEngine.SerialExecutor reminderExecutor = TaskEngine.get().newSerialExecutor(TaskEngine.Lane.INTERACTIVE);
+    private final SyncCoordinator.CoalescingTrigger flushTrigger = new SyncCoordinator.CoalescingTrigger(COMPLETION_FLUSH_WINDOW_MS, new Runnable() {
+        @Override
+        public void run() {
+            try {
+                syncExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        flushCompletions();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // they'll be sent before the next sync instead
+                Log.w(TAG, "Couldn't queue completion flush: " + e.getMessage());
+            }
+        }
+    });
+    // whether a sync has been queued on the executor but hasn't started yet
+    private final AtomicBoolean syncQueued = new AtomicBoolean();
+    private final SyncCoordinator.CoalescingTrigger syncTrigger = new SyncCoordinator.CoalescingTrigger(SYNC_COALESCE_WINDOW_MS, new Runnable() {
+        @Override
+        public void run() {
+            startSync();
+        }
+    });
+
+    // the filtered view indexes are rebuilt in the background on the next render that needs them
+    private final MemoryBudget.Trimmable renderedTrimmable = new MemoryBudget.Trimmable() {
+        @Override
+        public void trim() {
+            synchronized (listStates) {
+                for (ListState state : listStates.values()) {
+                    state.trim();
+                }
+            }
+            TaskSnapshotStore.trimIndexes();
+        }
+    };
+
+    // the snapshots of the selected lists are the trees in the list states, so keeping them costs
+    // nothing, the rest are left over from lists that have since been deselected. the same goes
+    // for the trees kept for delta syncs
+    private final MemoryBudget.Trimmable snapshotsTrimmable = new MemoryBudget.Trimmable() {
+        @Override
+        public void trim() {
+            synchronized (listStates) {
+                TaskSnapshotStore.trim(listStates.keySet());
+                TasksAPI.trimSyncState(listStates.keySet());
+            }
+        }
+    };
+
+    // the user is probably about to look at the notification, so sync if it's been a while
+    private final BroadcastReceiver screenOnReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            scheduler.onInteraction();
+            if (started && scheduler.isInteractiveSyncDue()) {
+                requestSync();
+            }
+        }
+    };
+
+    // relative due date labels depend on the local date, so re-render when it may have changed
+    private final BroadcastReceiver dayChangeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Log.d(TAG, "Received " + intent.getAction());
+            // reminders are set for a local time, so move them to the new time zone
+            if (Intent.ACTION_TIMEZONE_CHANGED.equals(intent.getAction())) {
+                updateReminders();
+            }
+            rerender();
+        }
+    };
 
     private void startService() {
         Log.d(TAG, "Starting...");
-        if (executorService == null && scheduledFuture == null) {
-            executorService = Executors.newSingleThreadScheduledExecutor();
-            scheduledFuture = executorService.scheduleWithFixedDelay(this, 120, 120, TimeUnit.SECONDS);
-        }
-        if(executorService != null) {
-            executorService.schedule(this, 0, TimeUnit.SECONDS);
+        scheduler.onInteraction();
+        requestSync();
+    }
+
+    private void requestSync() {
+        started = true;
+        stopped = false;
+        syncTrigger.trigger();
+    }
+
+    private void startSync() {
+        if (stopped) return;
+        if (scheduler.hasNetwork()) {
+            scheduler.cancel();
+            // a sync already waiting to start will fetch the latest data anyway
+            if (syncQueued.compareAndSet(false, true)) {
+                try {
+                    syncExecutor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    Log.e(TAG, "Couldn't queue sync: " + e.getMessage());
+                    syncQueued.set(false);
+                    scheduler.onFailure();
+                    scheduler.scheduleNext();
+                }
+            }
+        } else {
+            // wait for a connection before syncing
+            Log.d(TAG, "No network, waiting to sync...");
+            scheduler.schedule(0);
         }
     }
 
     private void stopService() {
         Log.d(TAG, "Stopping...");
-        if (scheduledFuture != null) {
-            scheduledFuture.cancel(true);
-            scheduledFuture = null;
-        }
-        if (executorService != null) {
-            executorService.shutdown();
-            executorService = null;
-        }
+        stopped = true;
+        syncTrigger.cancel();
+        flushTrigger.cancel();
+        scheduler.cancel();
+        cancelDayRollover();
+        started = false;
+        // drops queued syncs, and lets any in progress sync finish rather than interrupting it
+        syncExecutor.cancel();
+        syncQueued.set(false);
         stopSelf();
     }
 
     @Override
     public void run() {
+        syncQueued.set(false);
+        SyncMetrics.onSyncStarted();
+        boolean changed = false;
+        boolean failed = false;
         try {
+            // send completions first so the fetch already reflects them
+            flushCompletions();
+
             SharedPreferences prefs = getSharedPreferences(getString(R.string.preference_file_key), MODE_PRIVATE);
-            String listId = prefs.getString(SP_LIST_ID_KEY, null);
-            String listTitle = prefs.getString(SP_LIST_TITLE_KEY, null);
-            if(listId == null) return;
-            List<TasksAPI.Task> tasks = TasksAPI.getTasks(this, listId);
-            NotificationManager manager = ContextCompat.getSystemService(this, NotificationManager.class);
-            if (manager != null) {
-                manager.notify(NOTIFICATION_ID, createNotification(listTitle, tasks));
+            List<TasksAPI.TaskList> lists = SelectedTaskLists.load(prefs);
+            if (lists.isEmpty()) return;
+
+            // fetch the task lists and every list's tasks in a single round trip
+            Map<String, List<Task>> results = new HashMap<>();
+            try {
+                List<String> listIds = new ArrayList<>();
+                for (TasksAPI.TaskList list : lists) {
+                    listIds.add(list.id);
+                }
+                TasksAPI.BatchResult batchResult = SyncCoordinator.getTaskListsAndTasks(this, listIds);
+                results.putAll(batchResult.tasks);
+                for (Map.Entry<String, IOException> entry : batchResult.errors.entrySet()) {
+                    Log.e(TAG, "Error getting tasks for " + entry.getKey() + " in batch: " + entry.getValue().getMessage());
+                }
+                if (batchResult.taskLists != null) {
+                    TaskListCache.put(prefs, batchResult.taskLists);
+                    lists = SelectedTaskLists.update(prefs, batchResult.taskLists);
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Error getting tasks in batch: " + e.getMessage());
+                SyncMetrics.recordError(e);
+            }
+
+            // fetch any lists the batch failed for at the same time, so this only takes as long
+            // as the slowest list
+            Map<TasksAPI.TaskList, Future<List<Task>>> futures = new LinkedHashMap<>();
+            for (final TasksAPI.TaskList list : lists) {
+                if (results.containsKey(list.id)) continue;
+                try {
+                    futures.put(list, TaskEngine.get().submit(TaskEngine.Lane.SYNC, new Callable<List<Task>>() {
+                        @Override
+                        public List<Task> call() throws IOException {
+                            return SyncCoordinator.getTasks(ForegroundService.this, list.id);
+                        }
+                    }));
+                } catch (RejectedExecutionException e) {
+                    Log.e(TAG, "Couldn't queue fetch for " + list.id + ": " + e.getMessage());
+                    failed = true;
+                }
+            }
+
+            long deadline = SystemClock.elapsedRealtime() + LIST_TIMEOUT_MS;
+            for (Map.Entry<TasksAPI.TaskList, Future<List<Task>>> entry : futures.entrySet()) {
+                String listId = entry.getKey().id;
+                try {
+                    long timeout = Math.max(0, deadline - SystemClock.elapsedRealtime());
+                    results.put(listId, entry.getValue().get(timeout, TimeUnit.MILLISECONDS));
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "Error getting tasks for " + listId + ": " + e.getCause().getMessage());
+                    SyncMetrics.recordError(e.getCause());
+                    failed = true;
+                } catch (TimeoutException e) {
+                    Log.e(TAG, "Timed out getting tasks for " + listId);
+                    SyncMetrics.recordError(e);
+                    entry.getValue().cancel(false);
+                    failed = true;
+                }
+            }
+
+            // the service is stopping, leave the notifications as they are
+            if (TaskEngine.isCurrentJobCancelled()) return;
+            synchronized (listStates) {
+                changed = updateNotifications(lists, results);
+            }
+            if (changed) {
+                TasksWidgetProvider.notifyChanged(this);
+            }
+        } catch (InterruptedException e) {
+            Log.e(TAG, "Interrupted getting tasks");
+            SyncMetrics.recordError(e);
+            failed = true;
+        } finally {
+            SyncMetrics.onSyncFinished(changed, failed);
+            if (failed) {
+                scheduler.onFailure();
+            } else {
+                scheduler.onSuccess(changed);
+            }
+            if (!stopped) {
+                scheduler.scheduleNext();
+            }
+        }
+    }
+
+    // removes the task from the notification straight away, and queues sending it to the API
+    private void completeTask(@Nullable String listId, @Nullable String taskId) {
+        if (listId == null || taskId == null) return;
+        Log.d(TAG, "Completing " + taskId + " in " + listId);
+        completionQueue.add(listId, taskId);
+        NotificationManager manager = ContextCompat.getSystemService(this, NotificationManager.class);
+        synchronized (listStates) {
+            ListState state = listStates.get(listId);
+            if (state != null && state.savedTasks != null && manager != null) {
+                state.savedTasks = TaskTreeBuilder.without(state.savedTasks, Collections.singleton(taskId));
+                // the file is written in the background, only the notification is updated here
+                TaskSnapshotStore.writeAsync(this, listId, state.list.title, state.savedTasks);
+                renderList(manager, state, getLabeller());
+                updateSummary(manager);
+                updateReminders(listId, state.savedTasks);
+            }
+            if (manager != null) manager.cancel(taskId, ReminderScheduler.NOTIFICATION_ID);
+        }
+        TasksWidgetProvider.notifyChanged(this);
+        flushTrigger.trigger();
+    }
+
+    // runs on the executor, so never at the same time as a sync
+    private void flushCompletions() {
+        if (completionQueue.isEmpty()) return;
+        try {
+            Set<String> rejectedListIds = TasksAPI.flushCompletions(this, completionQueue);
+            if (!rejectedListIds.isEmpty()) {
+                Log.d(TAG, "Completions rejected for " + rejectedListIds + ", syncing...");
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!stopped) requestSync();
+                    }
+                });
             }
         } catch (IOException e) {
-            Log.e(TAG, "Error getting tasks: " + e.getMessage());
+            // left in the queue, they'll be sent again before the next sync
+            Log.e(TAG, "Error flushing completions: " + e.getMessage());
+            SyncMetrics.recordError(e);
         }
     }
 
-    private Notification createNotification(@Nullable String listTitle, @Nullable List<TasksAPI.Task> tasks) {
-        Log.d(TAG, "Displaying notification...");
+    private boolean updateNotifications(List<TasksAPI.TaskList> lists, Map<String, List<Task>> results) {
+        NotificationManager manager = ContextCompat.getSystemService(this, NotificationManager.class);
+        if (manager == null) return false;
 
+        // remove notifications for lists that are no longer selected
+        Map<String, ListState> previousStates = new HashMap<>(listStates);
+        listStates.clear();
+        for (TasksAPI.TaskList list : lists) {
+            ListState state = previousStates.remove(list.id);
+            if (state == null || !Objects.equals(state.list.title, list.title)) {
+                ListState newState = new ListState(list);
+                if (state != null) newState.savedTasks = state.savedTasks;
+                state = newState;
+            }
+            listStates.put(list.id, state);
+        }
+        for (String listId : previousStates.keySet()) {
+            manager.cancel(listId, LIST_NOTIFICATION_ID);
+            updateReminders(listId, null);
+        }
+
+        boolean changed = false;
+        DueDateLabeller labeller = getLabeller();
+        for (ListState state : listStates.values()) {
+            List<Task> tasks = results.get(state.list.id);
+            if (tasks == null) continue;
+            // tasks completed while the sync was running, this is the same tree if there are none
+            tasks = TaskTreeBuilder.without(tasks, completionQueue.getPending(state.list.id));
+
+            // getTasks returns the same tree if nothing has changed, so only save new ones
+            if (tasks != state.savedTasks) {
+                changed = true;
+                // only the cached snapshot is replaced with the lock held, the file is written in
+                // the background
+                TaskSnapshotStore.writeAsync(this, state.list.id, state.list.title, tasks);
+                updateReminders(state.list.id, tasks);
+                state.savedTasks = tasks;
+            }
+            renderList(manager, state, labeller);
+        }
+
+        updateSummary(manager);
+        return changed;
+    }
+
+    private void updateSummary(NotificationManager manager) {
+        int fingerprint = summaryFingerprint();
+        if (summaryFingerprint == null || summaryFingerprint != fingerprint) {
+            manager.notify(NOTIFICATION_ID, createSummaryNotification());
+            summaryFingerprint = fingerprint;
+        }
+    }
+
+    private void renderList(NotificationManager manager, ListState state, DueDateLabeller labeller) {
+        if (state.savedTasks == state.renderedTasks && labeller == state.renderedLabeller && query.equals(state.renderedQuery)) return;
+        List<Task> tasks = state.getView(query, labeller);
+        if (tasks == null) {
+            // the notification keeps showing the last view until the index is ready
+            buildIndex(state);
+            return;
+        }
+        long start = SyncMetrics.start();
+        // skip posting the notification again if it would look exactly the same
+        TaskLineRenderer.Result rendered = RENDERER.render(tasks, labeller);
+        List<Task> doneTasks = firstTasks(tasks, MAX_DONE_ACTIONS);
+        int fingerprint = fingerprint(state.list.title, rendered, doneTasks);
+        if (state.renderedFingerprint != null && state.renderedFingerprint == fingerprint) {
+            Log.d(TAG, "Notification for " + state.list.id + " unchanged");
+        } else {
+            manager.notify(state.list.id, LIST_NOTIFICATION_ID, createNotification(state.list.id, state.list.title, rendered, doneTasks));
+            state.renderedFingerprint = fingerprint;
+        }
+        state.renderedTasks = state.savedTasks;
+        state.renderedLabeller = labeller;
+        state.renderedQuery = query;
+        SyncMetrics.record(SyncMetrics.Stage.RENDER, start);
+    }
+
+    // indexing a large list takes long enough to drop frames, so it's never done on the main thread
+    // or with the list states locked. the list is rendered once it's done, called with the list
+    // states locked
+    private void buildIndex(final ListState state) {
+        final List<Task> tasks = state.savedTasks;
+        if (state.indexingTasks == tasks) return;
+        state.indexingTasks = tasks;
+        try {
+            TaskEngine.get().execute(TaskEngine.Lane.INTERACTIVE, new Runnable() {
+                @Override
+                public void run() {
+                    // the tasks were saved before rendering, so this is usually the index the
+                    // widget uses too
+                    TaskIndex index = TaskSnapshotStore.getIndex(state.list.id, tasks);
+                    NotificationManager manager = ContextCompat.getSystemService(ForegroundService.this, NotificationManager.class);
+                    synchronized (listStates) {
+                        if (state.indexingTasks == tasks) state.indexingTasks = null;
+                        // the tasks changed while indexing, rendering them queued another build
+                        if (state.savedTasks != tasks) return;
+                        state.index = index;
+                        state.indexedTasks = tasks;
+                        if (stopped || manager == null || listStates.get(state.list.id) != state) return;
+                        renderList(manager, state, getLabeller());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // tried again on the next render
+            Log.e(TAG, "Couldn't queue index build: " + e.getMessage());
+            state.indexingTasks = null;
+        }
+    }
+
+    // the labeller for the current local date, replaced when the day changes
+    private DueDateLabeller getLabeller() {
+        LocalDate today = LocalDate.now();
+        if (labeller == null || !labeller.getToday().equals(today)) {
+            labeller = new DueDateLabeller(today);
+        }
+        return labeller;
+    }
+
+    // re-renders the cached tasks with the current date's labels and the chosen view, without syncing
+    private void rerender() {
+        NotificationManager manager = ContextCompat.getSystemService(this, NotificationManager.class);
+        if (manager != null) {
+            SharedPreferences prefs = getSharedPreferences(getString(R.string.preference_file_key), MODE_PRIVATE);
+            synchronized (listStates) {
+                DueDateLabeller labeller = getLabeller();
+                query = TaskView.load(prefs);
+                for (ListState state : listStates.values()) {
+                    if (state.savedTasks != null) {
+                        renderList(manager, state, labeller);
+                    }
+                }
+            }
+        }
+        // the widget's labels and view may have changed too
+        TasksWidgetProvider.notifyChanged(this);
+        scheduleDayRollover();
+    }
+
+    private void updateReminders() {
+        synchronized (listStates) {
+            for (ListState state : listStates.values()) {
+                if (state.savedTasks != null) {
+                    updateReminders(state.list.id, state.savedTasks);
+                }
+            }
+        }
+    }
+
+    // queues updating the list's reminders to the given tree, or removing them if it's null. if
+    // it can't be queued the reminders are left, the next sync updates them, and reminders for
+    // tasks that have gone aren't shown
+    private void updateReminders(final String listId, @Nullable final List<Task> tasks) {
+        try {
+            reminderExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (tasks == null) {
+                        reminders.remove(listId);
+                    } else {
+                        reminders.update(listId, tasks);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Couldn't queue reminder update for " + listId + ": " + e.getMessage());
+        }
+    }
+
+    private PendingIntent getRenderIntent() {
+        Intent intent = new Intent(this, ForegroundService.class);
+        intent.setAction(Actions.RENDER.name());
+        return PendingIntent.getService(this, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    // re-renders just after the next local midnight, the alarm doesn't wake the device as the
+    // notification can't be seen until something else does
+    private void scheduleDayRollover() {
+        AlarmManager alarmManager = ContextCompat.getSystemService(this, AlarmManager.class);
+        if (alarmManager == null) return;
+        ZoneId zone = ZoneId.systemDefault();
+        long midnight = LocalDate.now(zone).plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        alarmManager.set(AlarmManager.RTC, midnight, getRenderIntent());
+    }
+
+    private void cancelDayRollover() {
+        AlarmManager alarmManager = ContextCompat.getSystemService(this, AlarmManager.class);
+        if (alarmManager != null) {
+            alarmManager.cancel(getRenderIntent());
+        }
+    }
+
+    private void createNotificationChannel() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             NotificationManager manager = getSystemService(NotificationManager.class);
             NotificationChannel channel = new NotificationChannel(NOTIFICATION_CHANNEL_ID, "Tasks", NotificationManager.IMPORTANCE_LOW);
@@ -124,27 +711,81 @@ public class ForegroundService extends Service implements Runnable {
             channel.enableVibration(false);
             Objects.requireNonNull(manager).createNotificationChannel(channel);
         }
+    }
 
-        Intent intent = getPackageManager().getLaunchIntentForPackage("com.google.android.apps.tasks");
-        if(intent == null) {
+    private PendingIntent getContentIntent() {
+        if (contentIntent == null) {
+            contentIntent = PendingIntent.getActivity(this, 0, getTasksAppIntent(this), 0);
+        }
+        return contentIntent;
+    }
+
+    // opens the Tasks app, or its store listing if it isn't installed
+    static Intent getTasksAppIntent(Context context) {
+        Intent intent = context.getPackageManager().getLaunchIntentForPackage("com.google.android.apps.tasks");
+        if (intent == null) {
             intent = new Intent(Intent.ACTION_VIEW, Uri.parse("market://details?id=com.google.android.apps.tasks"));
         }
-        PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, intent, 0);
+        return intent;
+    }
 
+    private static int fingerprint(@Nullable String listTitle, TaskLineRenderer.Result rendered, List<Task> doneTasks) {
+        int hash = 31 * Objects.hashCode(listTitle) + rendered.fingerprint();
+        for (Task task : doneTasks) {
+            hash = 31 * hash + task.id.hashCode();
+        }
+        return hash;
+    }
+
+    // the first tasks in the order they're shown, depth first
+    private static List<Task> firstTasks(List<Task> tasks, int count) {
+        List<Task> first = new ArrayList<>(count);
+        addFirstTasks(tasks, count, first);
+        return first;
+    }
+
+    private static void addFirstTasks(List<Task> tasks, int count, List<Task> first) {
+        for (Task task : tasks) {
+            if (first.size() >= count) return;
+            first.add(task);
+            addFirstTasks(task.subTasks, count, first);
+        }
+    }
+
+    // also used by reminders
+    static PendingIntent getCompleteIntent(Context context, String listId, String taskId) {
+        Intent intent = new Intent(context, ForegroundService.class);
+        intent.setAction(Actions.COMPLETE.name());
+        // the data makes each task's intent distinct, extras aren't compared
+        intent.setData(Uri.fromParts("task", listId + "/" + taskId, null));
+        intent.putExtra(EXTRA_LIST_ID, listId);
+        intent.putExtra(EXTRA_TASK_ID, taskId);
+        return PendingIntent.getService(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    private int summaryFingerprint() {
+        int hash = 0;
+        for (ListState state : listStates.values()) {
+            hash = 31 * hash + Objects.hashCode(state.list.title);
+            hash = 31 * hash + (state.savedTasks == null ? -1 : Task.treeSize(state.savedTasks));
+        }
+        return hash;
+    }
+
+    // the foreground notification, summarising the per list notifications grouped under it
+    private Notification createSummaryNotification() {
         StringBuilder contentText = new StringBuilder();
         NotificationCompat.InboxStyle inboxStyle = new NotificationCompat.InboxStyle();
-        if (tasks != null) {
-            for (TasksAPI.Task task : tasks) {
-                if(contentText.length() > 0) {
-                    contentText.append(", ");
-                }
-                contentText.append(task.title);
-
-                inboxStyle.addLine(task.spannable);
-                for (TasksAPI.Task subTask : task.subTasks) {
-                    inboxStyle.addLine(subTask.spannable);
-                }
+        for (ListState state : listStates.values()) {
+            if (state.savedTasks == null) continue;
+            // sub tasks included, each task keeps the size of its tree so this is cheap
+            int count = Task.treeSize(state.savedTasks);
+            String line = state.list.title + ": " + count + (count == 1 ? " task" : " tasks");
+            if(contentText.length() > 0) {
+                contentText.append(", ");
             }
+            contentText.append(line);
+            inboxStyle.addLine(line);
         }
         if(contentText.length() == 0) {
             contentText.append("No Tasks");
@@ -152,11 +793,50 @@ public class ForegroundService extends Service implements Runnable {
         }
 
         return new NotificationCompat.Builder(this, NOTIFICATION_CHANNEL_ID)
-                .setSubText(listTitle)
                 .setContentText(contentText.toString())
                 .setSmallIcon(R.drawable.ic_stat_name)
                 .setStyle(inboxStyle)
-                .setContentIntent(pendingIntent)
+                .setContentIntent(getContentIntent())
+                .setGroup(NOTIFICATION_GROUP)
+                .setGroupSummary(true)
                 .build();
     }
+
+    // greys out the due date and notes, also used by the widget
+    static CharSequence toSpannable(TaskFormatter.Line line) {
+        if (line.detailStart < 0) return line.text;
+        SpannableString spannable = new SpannableString(line.text);
+        spannable.setSpan(new ForegroundColorSpan(0xFF777777), line.detailStart, line.text.length(), Spannable.SPAN_INCLUSIVE_INCLUSIVE);
+        return spannable;
+    }
+
+    private Notification createNotification(String listId, @Nullable String listTitle, TaskLineRenderer.Result rendered, List<Task> doneTasks) {
+        Log.d(TAG, "Displaying notification...");
+
+        NotificationCompat.InboxStyle inboxStyle = new NotificationCompat.InboxStyle();
+        for (TaskFormatter.Line line : rendered.lines) {
+            inboxStyle.addLine(toSpannable(line));
+        }
+        String contentText = rendered.summary;
+        if(rendered.isEmpty()) {
+            contentText = "No Tasks";
+            inboxStyle.addLine("No Tasks");
+        }
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, NOTIFICATION_CHANNEL_ID)
+                .setSubText(listTitle)
+                .setContentText(contentText)
+                .setSmallIcon(R.drawable.ic_stat_name)
+                .setStyle(inboxStyle)
+                .setContentIntent(getContentIntent())
+                .setGroup(NOTIFICATION_GROUP)
+                .setSortKey(listTitle)
+                // like the summary, a list can't be swiped away, it wouldn't be posted again
+                // until its tasks changed
+                .setOngoing(true);
+        for (Task task : doneTasks) {
+            builder.addAction(R.drawable.ic_stat_name, "\u2713 " + task.title, getCompleteIntent(this, listId, task.id));
+        }
+        return builder.build();
+    }
 }
@@ -1,22 +1,23 @@
 package com.mrbbot.taskification;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.os.AsyncTask;
 import android.os.Bundle;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.EditText;
 import android.widget.ImageView;
-import android.widget.Spinner;
+import android.widget.RadioGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.content.ContextCompat;
 
@@ -30,15 +31,18 @@ import com.google.android.gms.common.api.Scope;
 import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.Task;
 import com.google.api.services.tasks.TasksScopes;
+import com.mrbbot.taskification.core.SyncMetrics;
+import com.mrbbot.taskification.core.TaskQuery;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
-import static com.mrbbot.taskification.ForegroundService.SP_LIST_ID_KEY;
-import static com.mrbbot.taskification.ForegroundService.SP_LIST_TITLE_KEY;
-
-public class MainActivity extends AppCompatActivity implements View.OnClickListener {
+public class MainActivity extends AppCompatActivity implements View.OnClickListener, View.OnLongClickListener {
     private static final String TAG = "TaskificationActivity";
     private static final int RC_SIGN_IN = 1;
 
@@ -46,10 +50,14 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     private SignInButton signInButton;
     private ImageView iconView;
     private TextView infoTextView;
-    private Spinner taskListSpinner;
+    private Button taskListsButton;
+    private Button taskViewButton;
     private Button signOutButton;
+    private TextView debugTextView;
 
     private SharedPreferences prefs;
+    private List<TasksAPI.TaskList> taskLists;
+    private Future<List<TasksAPI.TaskList>> getTaskListsJob;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -65,60 +73,169 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         signInButton = findViewById(R.id.sign_in_button);
         iconView = findViewById(R.id.icon_view);
         infoTextView = findViewById(R.id.info_text_view);
-        taskListSpinner = findViewById(R.id.task_list_spinner);
+        taskListsButton = findViewById(R.id.task_lists_button);
+        taskViewButton = findViewById(R.id.task_view_button);
         signOutButton = findViewById(R.id.sign_out_button);
+        debugTextView = findViewById(R.id.debug_text_view);
 
         signInButton.setSize(SignInButton.SIZE_WIDE);
         signInButton.setOnClickListener(this);
+        taskListsButton.setOnClickListener(this);
+        taskViewButton.setOnClickListener(this);
         signOutButton.setOnClickListener(this);
+        if (BuildConfig.DEBUG) {
+            iconView.setOnLongClickListener(this);
+        }
 
         prefs = getSharedPreferences(getString(R.string.preference_file_key), MODE_PRIVATE);
 
         GoogleSignInAccount account = GoogleSignIn.getLastSignedInAccount(this);
-        if(account != null && prefs.getString(SP_LIST_ID_KEY, null) != null) {
+        if(account != null && !SelectedTaskLists.load(prefs).isEmpty()) {
             startService(Actions.START);
         }
         updateUI(account);
     }
 
-    @SuppressLint("ApplySharedPref")
-    private void selectTaskList(@NonNull TasksAPI.TaskList taskList) {
-        Log.d(TAG, "Setting list to " + taskList.id + "... (" + taskList.title + ")");
-        prefs.edit().putString(SP_LIST_ID_KEY, taskList.id).putString(SP_LIST_TITLE_KEY, taskList.title).commit();
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // don't deliver results to a destroyed activity
+        if (getTaskListsJob != null) getTaskListsJob.cancel(false);
+    }
+
+    private void selectTaskLists(@NonNull List<TasksAPI.TaskList> selected) {
+        Log.d(TAG, "Setting lists to " + selected + "...");
+        SelectedTaskLists.save(prefs, selected);
+        updateTaskListsButton(selected);
+        TasksWidgetProvider.notifyChanged(this);
         GoogleSignInAccount account = GoogleSignIn.getLastSignedInAccount(this);
         if(account != null) {
             startService(Actions.START);
         }
     }
 
+    private void updateTaskListsButton(List<TasksAPI.TaskList> selected) {
+        if (selected.isEmpty()) {
+            taskListsButton.setText(R.string.select_task_lists);
+        } else {
+            taskListsButton.setText(TextUtils.join(", ", selected));
+        }
+    }
+
     private void setTaskLists(final List<TasksAPI.TaskList> lists) {
-        taskListSpinner.setOnItemSelectedListener(null);
-        ArrayAdapter<TasksAPI.TaskList> adapter = new ArrayAdapter<>(MainActivity.this, R.layout.spinner_item, lists);
-        taskListSpinner.setAdapter(adapter);
-        String selectedList = prefs.getString(SP_LIST_ID_KEY, null);
-        if(selectedList == null && lists.size() > 0) {
+        taskLists = lists;
+        List<TasksAPI.TaskList> selected = SelectedTaskLists.load(prefs);
+        if(selected.isEmpty() && lists.size() > 0) {
             Log.d(TAG,"Setting default list...");
-            selectTaskList(lists.get(0));
-        } else if (selectedList != null) {
-            Log.d(TAG,"Setting saved list...");
-            for (int i = 0; i < lists.size(); i++) {
-                if(lists.get(i).id.equals(selectedList)) {
-                    taskListSpinner.setSelection(i);
+            selectTaskLists(Collections.singletonList(lists.get(0)));
+            return;
+        }
+
+        Log.d(TAG,"Setting saved lists...");
+        updateTaskListsButton(SelectedTaskLists.update(prefs, lists));
+    }
+
+    private void showTaskListsDialog() {
+        final List<TasksAPI.TaskList> lists = taskLists;
+        if (lists == null || lists.isEmpty()) return;
+
+        List<TasksAPI.TaskList> selected = SelectedTaskLists.load(prefs);
+        CharSequence[] titles = new CharSequence[lists.size()];
+        final boolean[] checked = new boolean[lists.size()];
+        for (int i = 0; i < lists.size(); i++) {
+            titles[i] = lists.get(i).title;
+            for (TasksAPI.TaskList selectedList : selected) {
+                if (selectedList.id.equals(lists.get(i).id)) {
+                    checked[i] = true;
                     break;
                 }
             }
         }
-        taskListSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
-            @Override
-            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
-                selectTaskList(lists.get(position));
-            }
 
-            @Override
-            public void onNothingSelected(AdapterView<?> parent) {
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.select_task_lists)
+                .setMultiChoiceItems(titles, checked, new DialogInterface.OnMultiChoiceClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which, boolean isChecked) {
+                        checked[which] = isChecked;
+                    }
+                })
+                .setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        List<TasksAPI.TaskList> newSelected = new ArrayList<>();
+                        for (int i = 0; i < lists.size(); i++) {
+                            if (checked[i]) newSelected.add(lists.get(i));
+                        }
+                        if (!newSelected.isEmpty()) {
+                            selectTaskLists(newSelected);
+                        }
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
 
-            }
-        });
+    // the view is applied by re-rendering the cached tasks, changing it never fetches anything
+    private void selectTaskView(TaskQuery query) {
+        Log.d(TAG, "Setting view to " + TaskView.describe(query) + "...");
+        TaskView.save(prefs, query);
+        taskViewButton.setText(TaskView.describe(query));
+        if (GoogleSignIn.getLastSignedInAccount(this) != null && !SelectedTaskLists.load(prefs).isEmpty()) {
+            startService(Actions.RENDER);
+        }
+    }
+
+    private void showTaskViewDialog() {
+        TaskQuery query = TaskView.load(prefs);
+        View view = getLayoutInflater().inflate(R.layout.dialog_task_view, null);
+        final RadioGroup dueRadioGroup = view.findViewById(R.id.due_radio_group);
+        final EditText textEditText = view.findViewById(R.id.text_edit_text);
+        final CheckBox topLevelCheckBox = view.findViewById(R.id.top_level_check_box);
+        final CheckBox sortDueCheckBox = view.findViewById(R.id.sort_due_check_box);
+
+        switch (query.dueWithinDays) {
+            case 0:
+                dueRadioGroup.check(R.id.due_today_radio);
+                break;
+            case 3:
+                dueRadioGroup.check(R.id.due_3_days_radio);
+                break;
+            case 7:
+                dueRadioGroup.check(R.id.due_7_days_radio);
+                break;
+            default:
+                dueRadioGroup.check(R.id.due_any_radio);
+        }
+        textEditText.setText(query.text);
+        topLevelCheckBox.setChecked(query.topLevelOnly);
+        sortDueCheckBox.setChecked(query.sort == TaskQuery.Sort.DUE_DATE);
+
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.task_view)
+                .setView(view)
+                .setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        int dueWithinDays = TaskQuery.ANY_DUE;
+                        int checkedId = dueRadioGroup.getCheckedRadioButtonId();
+                        if (checkedId == R.id.due_today_radio) {
+                            dueWithinDays = 0;
+                        } else if (checkedId == R.id.due_3_days_radio) {
+                            dueWithinDays = 3;
+                        } else if (checkedId == R.id.due_7_days_radio) {
+                            dueWithinDays = 7;
+                        }
+                        selectTaskView(new TaskQuery(
+                                dueWithinDays,
+                                textEditText.getText().toString(),
+                                topLevelCheckBox.isChecked(),
+                                sortDueCheckBox.isChecked() ? TaskQuery.Sort.DUE_DATE : TaskQuery.Sort.POSITION
+                        ));
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
     }
 
     private void updateUI(@Nullable GoogleSignInAccount account) {
@@ -127,7 +244,8 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
             signInButton.setVisibility(View.VISIBLE);
             iconView.setVisibility(View.INVISIBLE);
             infoTextView.setVisibility(View.INVISIBLE);
-            taskListSpinner.setVisibility(View.INVISIBLE);
+            taskListsButton.setVisibility(View.INVISIBLE);
+            taskViewButton.setVisibility(View.INVISIBLE);
             signOutButton.setVisibility(View.INVISIBLE);
 
         } else {
@@ -135,42 +253,52 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
             iconView.setVisibility(View.VISIBLE);
             infoTextView.setText(getString(R.string.app_greeting, account.getGivenName()));
             infoTextView.setVisibility(View.VISIBLE);
-            taskListSpinner.setVisibility(View.VISIBLE);
+            taskListsButton.setVisibility(View.VISIBLE);
+            taskViewButton.setText(TaskView.describe(TaskView.load(prefs)));
+            taskViewButton.setVisibility(View.VISIBLE);
             signOutButton.setVisibility(View.VISIBLE);
 
-            new GetTaskListsTask(new OnTaskCompletedListener<List<TasksAPI.TaskList>>() {
-                @Override
-                public void onTaskCompleted(List<TasksAPI.TaskList> result) {
-                    setTaskLists(result);
-                }
-            }).execute(this);
+            // show the cached lists straight away, and only wait for the network if there are none
+            List<TasksAPI.TaskList> cachedLists = TaskListCache.get(prefs);
+            if (cachedLists != null) {
+                setTaskLists(cachedLists);
+            }
+            if (cachedLists == null || TaskListCache.isStale(prefs)) {
+                fetchTaskLists();
+            }
         }
     }
 
-    private interface OnTaskCompletedListener<T> {
-        void onTaskCompleted(T result);
-    }
-
-    private static class GetTaskListsTask extends AsyncTask<Context, Void, List<TasksAPI.TaskList>> {
-        private OnTaskCompletedListener<List<TasksAPI.TaskList>> listener;
-
-        GetTaskListsTask(OnTaskCompletedListener<List<TasksAPI.TaskList>> listener) {
-            this.listener = listener;
-        }
-
-        @Override
-        protected List<TasksAPI.TaskList> doInBackground(Context... params) {
-            try {
-                return TasksAPI.getTaskLists(params[0]);
-            } catch (IOException e) {
-                Log.e(TAG, "Error getting task lists: " + e.getMessage());
-                return new ArrayList<>();
-            }
-        }
+    // refreshes the task lists in the background, ahead of any background syncing
+    private void fetchTaskLists() {
+        if (getTaskListsJob != null) getTaskListsJob.cancel(false);
+        final Context context = getApplicationContext();
+        try {
+            getTaskListsJob = TaskEngine.get().submit(TaskEngine.Lane.INTERACTIVE, new Callable<List<TasksAPI.TaskList>>() {
+                @Override
+                public List<TasksAPI.TaskList> call() throws IOException {
+                    // shares the service's request if it's already fetching the lists
+                    return SyncCoordinator.getTaskLists(context);
+                }
+            }, new TaskEngine.Callback<List<TasksAPI.TaskList>>() {
+                @Override
+                public void onResult(List<TasksAPI.TaskList> result) {
+                    getTaskListsJob = null;
+                    // keep showing the cached lists if there's no account
+                    if (result == null) return;
+                    if (TaskListCache.put(prefs, result) || taskLists == null) {
+                        setTaskLists(result);
+                    }
+                }
 
-        @Override
-        protected void onPostExecute(List<TasksAPI.TaskList> taskLists) {
-            listener.onTaskCompleted(taskLists);
+                @Override
+                public void onError(Exception e) {
+                    getTaskListsJob = null;
+                    Log.e(TAG, "Error getting task lists: " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "Couldn't queue task lists fetch: " + e.getMessage());
         }
     }
 
@@ -179,9 +307,21 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         if(v == signInButton) {
             Intent signInIntent = googleSignInClient.getSignInIntent();
             startActivityForResult(signInIntent, RC_SIGN_IN);
+        } else if(v == taskListsButton) {
+            showTaskListsDialog();
+        } else if(v == taskViewButton) {
+            showTaskViewDialog();
         } else if(v == signOutButton) {
-            prefs.edit().putString(SP_LIST_ID_KEY, null).apply();
-            prefs.edit().putString(SP_LIST_TITLE_KEY, null).apply();
+            SelectedTaskLists.clear(prefs);
+            taskLists = null;
+            TasksAPI.clearSyncState();
+            TasksService.invalidate();
+            TaskSnapshotStore.deleteAll(this);
+            CompletionQueue.get(this).clear();
+            ReminderScheduler.get(this).clear();
+            TaskListCache.clear(prefs);
+            TaskView.clear(prefs);
+            TasksWidgetProvider.notifyChanged(this);
             signOutButton.setEnabled(false);
             googleSignInClient.signOut().addOnCompleteListener(new OnCompleteListener<Void>() {
                 @Override
@@ -193,6 +333,22 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         }
     }
 
+    // long pressing the icon in debug builds toggles the sync metrics, which are only recorded
+    // while the service runs in this process
+    @Override
+    public boolean onLongClick(View v) {
+        if (v == iconView) {
+            if (debugTextView.getVisibility() == View.VISIBLE) {
+                debugTextView.setVisibility(View.GONE);
+            } else {
+                debugTextView.setText(SyncMetrics.dump());
+                debugTextView.setVisibility(View.VISIBLE);
+            }
+            return true;
+        }
+        return false;
+    }
+
     @Override
     public void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
@@ -0,0 +1,88 @@
+package com.mrbbot.taskification;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+// the caches kept in memory, registered so they can be dropped when the system is low on memory.
+// everything registered can be rebuilt, the cheapest to rebuild are dropped first and the rest
+// only as memory gets tighter
+class MemoryBudget {
+    private static final String TAG = "MemoryBudget";
+
+    // in the order caches are dropped
+    enum Priority {
+        // derived from the cached tasks, rebuilt on the next render
+        RENDERED,
+        // tasks that are also saved on disk, read back from there when next needed, and the sync
+        // state of lists that are no longer selected
+        SNAPSHOTS,
+        // idle connections, the next sync has to set up a new one
+        SYNC_STATE
+    }
+
+    interface Trimmable {
+        void trim();
+    }
+
+    private static final Map<Priority, List<Trimmable>> TRIMMABLES = new EnumMap<>(Priority.class);
+
+    static synchronized void register(Priority priority, Trimmable trimmable) {
+        List<Trimmable> trimmables = TRIMMABLES.get(priority);
+        if (trimmables == null) {
+            trimmables = new ArrayList<>();
+            TRIMMABLES.put(priority, trimmables);
+        }
+        trimmables.add(trimmable);
+    }
+
+    static synchronized void unregister(Trimmable trimmable) {
+        for (List<Trimmable> trimmables : TRIMMABLES.values()) {
+            trimmables.remove(trimmable);
+        }
+    }
+
+    // called from onTrimMemory with the level passed to it
+    static void onTrimMemory(int level) {
+        Priority priority = getPriority(level);
+        if (priority != null) trim(priority);
+    }
+
+    static void onLowMemory() {
+        trim(Priority.SYNC_STATE);
+    }
+
+    // the last priority to drop at a trim level, levels in between the known ones are treated
+    // as the next known level below them
+    private static Priority getPriority(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) return Priority.SYNC_STATE;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) return Priority.SNAPSHOTS;
+        // the activity has been hidden, what it rendered won't be needed for a while
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) return Priority.RENDERED;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) return Priority.SYNC_STATE;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) return Priority.SNAPSHOTS;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) return Priority.RENDERED;
+        return null;
+    }
+
+    // drops every cache up to and including the given priority
+    private static void trim(Priority last) {
+        List<Trimmable> trimmables = new ArrayList<>();
+        synchronized (MemoryBudget.class) {
+            for (Priority priority : Priority.values()) {
+                if (priority.compareTo(last) > 0) break;
+                List<Trimmable> registered = TRIMMABLES.get(priority);
+                if (registered != null) trimmables.addAll(registered);
+            }
+        }
+        Log.d(TAG, "Trimming " + trimmables.size() + " caches up to " + last);
+        // called without the lock, trimming may take a cache's own lock
+        for (Trimmable trimmable : trimmables) {
+            trimmable.trim();
+        }
+    }
+}
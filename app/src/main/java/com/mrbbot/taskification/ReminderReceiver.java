@@ -0,0 +1,89 @@
+package com.mrbbot.taskification;
+
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
+
+import com.mrbbot.taskification.core.DueDateLabeller;
+import com.mrbbot.taskification.core.Task;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+// raises a heads up notification when a task's reminder fires, from the cached tasks so it
+// doesn't have to wait for a sync
+public class ReminderReceiver extends BroadcastReceiver {
+    private static final String TAG = "ReminderReceiver";
+
+    @Override
+    public void onReceive(final Context context, Intent intent) {
+        final String listId = intent.getStringExtra(ReminderScheduler.EXTRA_LIST_ID);
+        final String taskId = intent.getStringExtra(ReminderScheduler.EXTRA_TASK_ID);
+        if (listId == null || taskId == null) return;
+        Log.d(TAG, "Reminder fired for " + taskId + " in " + listId);
+
+        // reading the snapshot may hit the disk, so do it off the main thread
+        final PendingResult result = goAsync();
+        try {
+            TaskEngine.get().execute(TaskEngine.Lane.INTERACTIVE, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        remind(context, listId, taskId);
+                    } finally {
+                        result.finish();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "Couldn't queue reminder: " + e.getMessage());
+            result.finish();
+        }
+    }
+
+    private static void remind(Context context, String listId, String taskId) {
+        if (!ReminderScheduler.get(context).onFired(listId, taskId)) return;
+        // completed from the notification but not sent to the API yet
+        if (CompletionQueue.get(context).isPending(listId, taskId)) return;
+        TaskSnapshotStore.Snapshot snapshot = TaskSnapshotStore.read(context, listId);
+        Task task = snapshot == null ? null : find(snapshot.tasks, taskId);
+        if (task == null || !task.hasDue()) return;
+
+        NotificationManager manager = ContextCompat.getSystemService(context, NotificationManager.class);
+        if (manager == null) return;
+        ReminderScheduler.createNotificationChannel(context);
+        String label = new DueDateLabeller(LocalDate.now()).label(task.due);
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, ReminderScheduler.NOTIFICATION_CHANNEL_ID)
+                .setContentTitle(task.title)
+                .setContentText(label)
+                .setSubText(snapshot.listTitle)
+                .setSmallIcon(R.drawable.ic_stat_name)
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setCategory(NotificationCompat.CATEGORY_REMINDER)
+                .setContentIntent(PendingIntent.getActivity(context, 0, ForegroundService.getTasksAppIntent(context), 0))
+                .setAutoCancel(true)
+                .addAction(R.drawable.ic_stat_name, "\u2713 Done", ForegroundService.getCompleteIntent(context, listId, taskId));
+        if (task.notes != null && !task.notes.isEmpty()) {
+            builder.setStyle(new NotificationCompat.BigTextStyle().bigText(label + "\n" + task.notes));
+        }
+        manager.notify(taskId, ReminderScheduler.NOTIFICATION_ID, builder.build());
+    }
+
+    @Nullable
+    private static Task find(List<Task> tasks, String taskId) {
+        for (Task task : tasks) {
+            if (task.id.equals(taskId)) return task;
+            Task found = find(task.subTasks, taskId);
+            if (found != null) return found;
+        }
+        return null;
+    }
+}
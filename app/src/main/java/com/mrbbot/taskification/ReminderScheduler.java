@@ -0,0 +1,305 @@
+package com.mrbbot.taskification;
+
+import android.app.AlarmManager;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import com.mrbbot.taskification.core.Task;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.mrbbot.taskification.ForegroundService.SP_REMINDERS_KEY;
+
+// reminders for each task's due date, kept in step with the cached tasks so they fire on time
+// without waiting for a poll. the reminders are persisted so each snapshot only has to be diffed
+// against them, and so their alarms can be set again after a reboot clears them. apps can only have
+// a few hundred alarms, so only the earliest reminders have exact alarms set, and the next ones are
+// set as they fire
+class ReminderScheduler {
+    private static final String TAG = "ReminderScheduler";
+    static final String NOTIFICATION_CHANNEL_ID = "RemindersChannel";
+    // reminder notifications are told apart by their tag, which is the task ID
+    static final int NOTIFICATION_ID = 3;
+    static final String EXTRA_LIST_ID = "list_id";
+    static final String EXTRA_TASK_ID = "task_id";
+
+    // due dates have no time, so remind in the morning of the due day
+    private static final LocalTime REMINDER_TIME = LocalTime.of(9, 0);
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+    // well under the limit on alarms per app, leaving room for the service's own alarms
+    static final int MAX_ALARMS = 20;
+
+    // reminders are stored one per line as "list ID<tab>task ID<tab>trigger time"
+    private static final char FIELD_SEPARATOR = '\t';
+    private static final char REMINDER_SEPARATOR = '\n';
+
+    private static ReminderScheduler instance;
+
+    static synchronized ReminderScheduler get(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = new ReminderScheduler(appContext, appContext.getSharedPreferences(appContext.getString(R.string.preference_file_key), Context.MODE_PRIVATE));
+        }
+        return instance;
+    }
+
+    // a reminder with an alarm set
+    private static final class Alarm {
+        final String listId;
+        final String taskId;
+        final long triggerAt;
+
+        Alarm(String listId, String taskId, long triggerAt) {
+            this.listId = listId;
+            this.taskId = taskId;
+            this.triggerAt = triggerAt;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Alarm)) return false;
+            Alarm alarm = (Alarm) o;
+            return triggerAt == alarm.triggerAt && listId.equals(alarm.listId) && taskId.equals(alarm.taskId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(listId, taskId, triggerAt);
+        }
+    }
+
+    private static final Comparator<Alarm> EARLIEST_FIRST = new Comparator<Alarm>() {
+        @Override
+        public int compare(Alarm a, Alarm b) {
+            if (a.triggerAt != b.triggerAt) return Long.compare(a.triggerAt, b.triggerAt);
+            int byList = a.listId.compareTo(b.listId);
+            return byList != 0 ? byList : a.taskId.compareTo(b.taskId);
+        }
+    };
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    // map mapping list ID to a map mapping task ID to the time it should be reminded about
+    private final Map<String, Map<String, Long>> scheduled = new LinkedHashMap<>();
+    // the reminders with alarms set, always the earliest of those scheduled, so they don't need
+    // saving and are known again after a restart
+    private Set<Alarm> alarms;
+
+    ReminderScheduler(Context context, SharedPreferences prefs) {
+        this.context = context;
+        this.prefs = prefs;
+        String value = prefs.getString(SP_REMINDERS_KEY, "");
+        for (String line : value.split(String.valueOf(REMINDER_SEPARATOR))) {
+            int first = line.indexOf(FIELD_SEPARATOR);
+            int second = line.indexOf(FIELD_SEPARATOR, first + 1);
+            if (first < 0 || second < 0) continue;
+            try {
+                getScheduled(line.substring(0, first)).put(line.substring(first + 1, second), Long.parseLong(line.substring(second + 1)));
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Ignoring invalid reminder: " + line);
+            }
+        }
+        alarms = getEarliest();
+    }
+
+    private Map<String, Long> getScheduled(String listId) {
+        Map<String, Long> reminders = scheduled.get(listId);
+        if (reminders == null) {
+            reminders = new HashMap<>();
+            scheduled.put(listId, reminders);
+        }
+        return reminders;
+    }
+
+    private void save() {
+        StringBuilder value = new StringBuilder();
+        for (Map.Entry<String, Map<String, Long>> entry : scheduled.entrySet()) {
+            for (Map.Entry<String, Long> reminder : entry.getValue().entrySet()) {
+                if (value.length() > 0) value.append(REMINDER_SEPARATOR);
+                value.append(entry.getKey()).append(FIELD_SEPARATOR).append(reminder.getKey()).append(FIELD_SEPARATOR).append(reminder.getValue());
+            }
+        }
+        prefs.edit().putString(SP_REMINDERS_KEY, value.toString()).apply();
+    }
+
+    // the time to remind about a task due on the given day, in the current time zone
+    static long getTriggerTime(long due) {
+        ZoneId zone = ZoneId.systemDefault();
+        // due dates are sent as midnight UTC on the due day, see DueDateLabeller
+        LocalDate day = LocalDate.ofEpochDay(Math.floorDiv(due, DAY_MS));
+        return day.atTime(REMINDER_TIME).atZone(zone).toInstant().toEpochMilli();
+    }
+
+    // adds, moves or removes reminders so there's one for each of the list's tasks due in the
+    // future, then updates the alarms
+    synchronized void update(String listId, List<Task> tasks) {
+        Map<String, Long> wanted = new HashMap<>();
+        addTriggerTimes(tasks, wanted);
+
+        long now = System.currentTimeMillis();
+        Map<String, Long> reminders = getScheduled(listId);
+        boolean changed = false;
+        for (Iterator<Map.Entry<String, Long>> it = reminders.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Long> entry = it.next();
+            // completed, deleted or no longer due
+            if (!wanted.containsKey(entry.getKey())) {
+                it.remove();
+                changed = true;
+            }
+        }
+        for (Map.Entry<String, Long> entry : wanted.entrySet()) {
+            long triggerAt = entry.getValue();
+            Long current = reminders.get(entry.getKey());
+            if (current != null && current == triggerAt) continue;
+            // a reminder that's already fired isn't set again, unless the task's due date moves
+            // back into the future
+            if (triggerAt <= now) {
+                if (current != null) {
+                    reminders.remove(entry.getKey());
+                    changed = true;
+                }
+                continue;
+            }
+            reminders.put(entry.getKey(), triggerAt);
+            changed = true;
+        }
+        if (reminders.isEmpty()) scheduled.remove(listId);
+        if (changed) {
+            Log.d(TAG, "Reminders for " + listId + " updated, " + reminders.size() + " set");
+            save();
+            updateAlarms();
+        }
+    }
+
+    // the earliest reminders, which should have alarms set
+    private Set<Alarm> getEarliest() {
+        List<Alarm> all = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Long>> entry : scheduled.entrySet()) {
+            for (Map.Entry<String, Long> reminder : entry.getValue().entrySet()) {
+                all.add(new Alarm(entry.getKey(), reminder.getKey(), reminder.getValue()));
+            }
+        }
+        Collections.sort(all, EARLIEST_FIRST);
+        return new HashSet<>(all.subList(0, Math.min(all.size(), MAX_ALARMS)));
+    }
+
+    // cancels alarms for reminders that have gone or are no longer among the earliest, then sets
+    // any missing
+    private void updateAlarms() {
+        Set<Alarm> earliest = getEarliest();
+        for (Alarm alarm : alarms) {
+            if (!earliest.contains(alarm)) cancelAlarm(alarm.listId, alarm.taskId);
+        }
+        for (Alarm alarm : earliest) {
+            if (!alarms.contains(alarm)) setAlarm(alarm.listId, alarm.taskId, alarm.triggerAt);
+        }
+        alarms = earliest;
+    }
+
+    private static void addTriggerTimes(List<Task> tasks, Map<String, Long> triggerTimes) {
+        for (Task task : tasks) {
+            if (task.hasDue()) {
+                triggerTimes.put(task.id, getTriggerTime(task.due));
+            }
+            addTriggerTimes(task.subTasks, triggerTimes);
+        }
+    }
+
+    // cancels the alarms for a list that's no longer selected
+    synchronized void remove(String listId) {
+        if (scheduled.remove(listId) == null) return;
+        save();
+        updateAlarms();
+    }
+
+    // called when a reminder fires, returns false if it had since been cancelled or moved. the
+    // next reminder waiting for an alarm gets one
+    synchronized boolean onFired(String listId, String taskId) {
+        Map<String, Long> reminders = scheduled.get(listId);
+        if (reminders == null) return false;
+        Long triggerAt = reminders.remove(taskId);
+        if (triggerAt == null) return false;
+        if (reminders.isEmpty()) scheduled.remove(listId);
+        save();
+        // this alarm has gone off, so there's nothing to cancel
+        alarms.remove(new Alarm(listId, taskId, triggerAt));
+        updateAlarms();
+        // the alarm may have been delivered early or late, but not for a different day
+        return Math.abs(System.currentTimeMillis() - triggerAt) < DAY_MS;
+    }
+
+    // alarms are cleared on reboot, set them all again. any missed while the device was off
+    // fire straight away
+    synchronized void rescheduleAll() {
+        for (Alarm alarm : alarms) {
+            setAlarm(alarm.listId, alarm.taskId, alarm.triggerAt);
+        }
+    }
+
+    synchronized void clear() {
+        for (Alarm alarm : alarms) {
+            cancelAlarm(alarm.listId, alarm.taskId);
+        }
+        alarms.clear();
+        scheduled.clear();
+        prefs.edit().remove(SP_REMINDERS_KEY).apply();
+    }
+
+    private PendingIntent getAlarmIntent(String listId, String taskId, int flags) {
+        Intent intent = new Intent(context, ReminderReceiver.class);
+        // the data makes each task's intent distinct, extras aren't compared
+        intent.setData(Uri.fromParts("reminder", listId + "/" + taskId, null));
+        intent.putExtra(EXTRA_LIST_ID, listId);
+        intent.putExtra(EXTRA_TASK_ID, taskId);
+        return PendingIntent.getBroadcast(context, 0, intent, flags);
+    }
+
+    // wakes the device, as the point of a reminder is to be seen on time
+    private void setAlarm(String listId, String taskId, long triggerAt) {
+        AlarmManager alarmManager = ContextCompat.getSystemService(context, AlarmManager.class);
+        if (alarmManager == null) return;
+        alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAt, getAlarmIntent(listId, taskId, PendingIntent.FLAG_UPDATE_CURRENT));
+    }
+
+    private void cancelAlarm(String listId, String taskId) {
+        AlarmManager alarmManager = ContextCompat.getSystemService(context, AlarmManager.class);
+        PendingIntent intent = getAlarmIntent(listId, taskId, PendingIntent.FLAG_NO_CREATE);
+        if (alarmManager == null || intent == null) return;
+        alarmManager.cancel(intent);
+        intent.cancel();
+    }
+
+    static void createNotificationChannel(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager manager = context.getSystemService(NotificationManager.class);
+            // high importance so reminders are shown as heads up notifications
+            NotificationChannel channel = new NotificationChannel(NOTIFICATION_CHANNEL_ID, "Reminders", NotificationManager.IMPORTANCE_HIGH);
+            channel.setDescription("Reminders for tasks that are due");
+            Objects.requireNonNull(manager).createNotificationChannel(channel);
+        }
+    }
+}
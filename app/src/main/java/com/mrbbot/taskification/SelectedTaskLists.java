@@ -0,0 +1,98 @@
+package com.mrbbot.taskification;
+
+import android.annotation.SuppressLint;
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.mrbbot.taskification.ForegroundService.SP_LISTS_KEY;
+import static com.mrbbot.taskification.ForegroundService.SP_LIST_ID_KEY;
+import static com.mrbbot.taskification.ForegroundService.SP_LIST_TITLE_KEY;
+
+class SelectedTaskLists {
+    // lists are stored one per line as "id<tab>title", ids and titles can't contain either
+    private static final char FIELD_SEPARATOR = '\t';
+    private static final char LIST_SEPARATOR = '\n';
+
+    @NonNull
+    static List<TasksAPI.TaskList> load(SharedPreferences prefs) {
+        String value = prefs.getString(SP_LISTS_KEY, null);
+        if (value == null) {
+            // selection saved before multiple lists were supported
+            List<TasksAPI.TaskList> lists = new ArrayList<>();
+            String listId = prefs.getString(SP_LIST_ID_KEY, null);
+            if (listId != null) {
+                lists.add(new TasksAPI.TaskList(listId, prefs.getString(SP_LIST_TITLE_KEY, null)));
+            }
+            return lists;
+        }
+        return decode(value);
+    }
+
+    // also used by TaskListCache
+    @NonNull
+    static List<TasksAPI.TaskList> decode(String value) {
+        List<TasksAPI.TaskList> lists = new ArrayList<>();
+        for (String line : value.split(String.valueOf(LIST_SEPARATOR))) {
+            int separator = line.indexOf(FIELD_SEPARATOR);
+            if (separator < 0) continue;
+            lists.add(new TasksAPI.TaskList(line.substring(0, separator), line.substring(separator + 1)));
+        }
+        return lists;
+    }
+
+    static String encode(List<TasksAPI.TaskList> lists) {
+        StringBuilder value = new StringBuilder();
+        for (TasksAPI.TaskList list : lists) {
+            if (value.length() > 0) value.append(LIST_SEPARATOR);
+            value.append(list.id).append(FIELD_SEPARATOR).append(clean(list.title));
+        }
+        return value.toString();
+    }
+
+    @SuppressLint("ApplySharedPref")
+    static void save(SharedPreferences prefs, List<TasksAPI.TaskList> lists) {
+        prefs.edit()
+                .putString(SP_LISTS_KEY, encode(lists))
+                .remove(SP_LIST_ID_KEY)
+                .remove(SP_LIST_TITLE_KEY)
+                .commit();
+    }
+
+    // keeps the saved selection's titles up to date with the user's task lists and drops lists
+    // that have been deleted, returning the new selection
+    @NonNull
+    static List<TasksAPI.TaskList> update(SharedPreferences prefs, List<TasksAPI.TaskList> allLists) {
+        List<TasksAPI.TaskList> selected = load(prefs);
+        List<TasksAPI.TaskList> updated = new ArrayList<>();
+        for (TasksAPI.TaskList list : allLists) {
+            for (TasksAPI.TaskList selectedList : selected) {
+                if (selectedList.id.equals(list.id)) {
+                    updated.add(list);
+                    break;
+                }
+            }
+        }
+        if (updated.isEmpty()) return selected;
+        if (!encode(updated).equals(encode(selected))) {
+            save(prefs, updated);
+        }
+        return updated;
+    }
+
+    static void clear(SharedPreferences prefs) {
+        prefs.edit()
+                .remove(SP_LISTS_KEY)
+                .remove(SP_LIST_ID_KEY)
+                .remove(SP_LIST_TITLE_KEY)
+                .apply();
+    }
+
+    private static String clean(String title) {
+        if (title == null) return "";
+        return title.replace(FIELD_SEPARATOR, ' ').replace(LIST_SEPARATOR, ' ');
+    }
+}
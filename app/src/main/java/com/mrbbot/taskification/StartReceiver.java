@@ -14,6 +14,8 @@ public class StartReceiver extends BroadcastReceiver {
     public void onReceive(Context context, Intent intent) {
         // start service on boot
         if(Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
+            // alarms don't survive a reboot
+            ReminderScheduler.get(context).rescheduleAll();
             Log.i(TAG, "Starting service...");
             Intent serviceIntent = new Intent(context, ForegroundService.class);
             serviceIntent.setAction(Actions.START.name());
@@ -0,0 +1,159 @@
+package com.mrbbot.taskification;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.mrbbot.taskification.core.Task;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+// makes sure the activity and the service never make the same request at the same time, anyone
+// asking for something that's already being fetched waits for that fetch's result instead
+class SyncCoordinator {
+    private static final String TAG = "SyncCoordinator";
+
+    private static final String TASK_LISTS_KEY = "lists";
+    private static final String TASKS_KEY_PREFIX = "tasks:";
+    private static final String BATCH_KEY_PREFIX = "batch:";
+
+    // map mapping request key to the fetch currently running for it
+    private static final Map<String, FutureTask<?>> IN_FLIGHT = new HashMap<>();
+    // the batch currently running, which also fetches the task lists
+    @Nullable
+    private static FutureTask<TasksAPI.BatchResult> currentBatch;
+
+    @Nullable
+    static List<TasksAPI.TaskList> getTaskLists(final Context context) throws IOException {
+        FutureTask<TasksAPI.BatchResult> batch;
+        synchronized (IN_FLIGHT) {
+            batch = currentBatch;
+        }
+        if (batch != null) {
+            Log.d(TAG, "Waiting for batch to get task lists...");
+            TasksAPI.BatchResult result = get(batch);
+            if (result.taskLists != null) return result.taskLists;
+        }
+        return run(TASK_LISTS_KEY, new Callable<List<TasksAPI.TaskList>>() {
+            @Override
+            public List<TasksAPI.TaskList> call() throws IOException {
+                return TasksAPI.getTaskLists(context);
+            }
+        });
+    }
+
+    static List<Task> getTasks(final Context context, final String listId) throws IOException {
+        return run(TASKS_KEY_PREFIX + listId, new Callable<List<Task>>() {
+            @Override
+            public List<Task> call() throws IOException {
+                return TasksAPI.getTasks(context, listId);
+            }
+        });
+    }
+
+    @NonNull
+    static TasksAPI.BatchResult getTaskListsAndTasks(final Context context, final Collection<String> listIds) throws IOException {
+        return run(BATCH_KEY_PREFIX + new TreeSet<>(listIds), new Callable<TasksAPI.BatchResult>() {
+            @Override
+            public TasksAPI.BatchResult call() throws IOException {
+                return TasksAPI.getTaskListsAndTasks(context, listIds);
+            }
+        });
+    }
+
+    // runs the callable on the calling thread, unless the same key is already running, in which
+    // case this waits for and returns that result
+    @SuppressWarnings("unchecked")
+    private static <V> V run(String key, Callable<V> callable) throws IOException {
+        FutureTask<V> task;
+        boolean owner = false;
+        synchronized (IN_FLIGHT) {
+            task = (FutureTask<V>) IN_FLIGHT.get(key);
+            if (task == null) {
+                task = new FutureTask<>(callable);
+                IN_FLIGHT.put(key, task);
+                owner = true;
+                if (key.startsWith(BATCH_KEY_PREFIX)) {
+                    currentBatch = (FutureTask<TasksAPI.BatchResult>) task;
+                }
+            }
+        }
+        if (owner) {
+            try {
+                task.run();
+            } finally {
+                synchronized (IN_FLIGHT) {
+                    IN_FLIGHT.remove(key);
+                    if (currentBatch == task) currentBatch = null;
+                }
+            }
+        } else {
+            Log.d(TAG, "Joining in flight request " + key);
+        }
+        return get(task);
+    }
+
+    private static <V> V get(FutureTask<V> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for request");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    // collapses triggers that arrive within the window of the first one into a single run of the
+    // action, must only be used from the main thread
+    static class CoalescingTrigger {
+        private final Handler handler = new Handler(Looper.getMainLooper());
+        private final long windowMs;
+        private final Runnable action;
+        private boolean pending;
+
+        private final Runnable fire = new Runnable() {
+            @Override
+            public void run() {
+                pending = false;
+                action.run();
+            }
+        };
+
+        CoalescingTrigger(long windowMs, Runnable action) {
+            this.windowMs = windowMs;
+            this.action = action;
+        }
+
+        void trigger() {
+            if (pending) {
+                Log.d(TAG, "Coalescing trigger");
+                return;
+            }
+            pending = true;
+            handler.postDelayed(fire, windowMs);
+        }
+
+        void cancel() {
+            pending = false;
+            handler.removeCallbacks(fire);
+        }
+    }
+}
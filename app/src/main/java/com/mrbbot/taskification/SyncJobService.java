@@ -0,0 +1,27 @@
+package com.mrbbot.taskification;
+
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.content.Intent;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+public class SyncJobService extends JobService {
+    private static final String TAG = "TaskificationSyncJob";
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        // the sync itself runs in the foreground service, the job just decides when
+        Log.d(TAG, "Requesting sync...");
+        Intent serviceIntent = new Intent(this, ForegroundService.class);
+        serviceIntent.setAction(Actions.SYNC.name());
+        ContextCompat.startForegroundService(this, serviceIntent);
+        return false;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        return false;
+    }
+}
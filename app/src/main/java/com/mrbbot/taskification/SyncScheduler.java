@@ -0,0 +1,122 @@
+package com.mrbbot.taskification;
+
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+class SyncScheduler {
+    private static final String TAG = "SyncScheduler";
+    private static final int SYNC_JOB_ID = 1;
+
+    // polling interval used normally, and shortly after the user has interacted with the device.
+    // reminders are set from the cached tasks, so polls only need to pick up remote changes
+    private static final long BASE_INTERVAL_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final long INTERACTIVE_INTERVAL_MS = TimeUnit.SECONDS.toMillis(60);
+    private static final long INTERACTIVE_WINDOW_MS = TimeUnit.MINUTES.toMillis(5);
+
+    // after this many polls without changes the interval doubles each poll, up to the maximum
+    private static final int IDLE_POLLS = 3;
+    private static final long MAX_IDLE_INTERVAL_MS = TimeUnit.MINUTES.toMillis(15);
+
+    private static final long MAX_BACKOFF_MS = TimeUnit.MINUTES.toMillis(30);
+
+    // for times that haven't happened yet in this process, checked before subtracting as
+    // elapsedRealtime minus any sentinel far enough in the past would overflow
+    private static final long NEVER = -1;
+
+    private final Context context;
+    private final Random random = new Random();
+
+    private int unchangedPolls;
+    private int failures;
+    private long lastInteraction = NEVER;
+    private long lastSync = NEVER;
+
+    SyncScheduler(Context context) {
+        this.context = context;
+    }
+
+    synchronized void onInteraction() {
+        lastInteraction = SystemClock.elapsedRealtime();
+        unchangedPolls = 0;
+    }
+
+    // whether enough time has passed since the last sync to sync again after an interaction
+    synchronized boolean isInteractiveSyncDue() {
+        return lastSync == NEVER || SystemClock.elapsedRealtime() - lastSync >= INTERACTIVE_INTERVAL_MS;
+    }
+
+    synchronized void onSuccess(boolean changed) {
+        lastSync = SystemClock.elapsedRealtime();
+        failures = 0;
+        unchangedPolls = changed ? 0 : unchangedPolls + 1;
+    }
+
+    synchronized void onFailure() {
+        lastSync = SystemClock.elapsedRealtime();
+        failures++;
+    }
+
+    synchronized long getNextDelay() {
+        if (failures > 0) {
+            // exponential backoff with jitter, so devices that failed together don't retry together
+            long backoff = Math.min(MAX_BACKOFF_MS, BASE_INTERVAL_MS << Math.min(failures - 1, 10));
+            return backoff / 2 + (long) (random.nextDouble() * (backoff / 2));
+        }
+
+        long interval;
+        if (lastInteraction != NEVER && SystemClock.elapsedRealtime() - lastInteraction < INTERACTIVE_WINDOW_MS) {
+            interval = INTERACTIVE_INTERVAL_MS;
+        } else if (unchangedPolls > IDLE_POLLS) {
+            interval = Math.min(MAX_IDLE_INTERVAL_MS, BASE_INTERVAL_MS << Math.min(unchangedPolls - IDLE_POLLS, 10));
+        } else {
+            interval = BASE_INTERVAL_MS;
+        }
+
+        // poll less often on metered networks
+        ConnectivityManager connectivityManager = ContextCompat.getSystemService(context, ConnectivityManager.class);
+        if (connectivityManager != null && connectivityManager.isActiveNetworkMetered()) {
+            interval = Math.min(MAX_IDLE_INTERVAL_MS, interval * 2);
+        }
+        return interval;
+    }
+
+    // schedules the next sync as a job, so it only runs once there is a network connection and
+    // can be batched with other work by the system
+    void scheduleNext() {
+        long delay = getNextDelay();
+        Log.d(TAG, "Scheduling next sync in " + TimeUnit.MILLISECONDS.toSeconds(delay) + "s");
+        schedule(delay);
+    }
+
+    void schedule(long delay) {
+        JobScheduler jobScheduler = ContextCompat.getSystemService(context, JobScheduler.class);
+        if (jobScheduler == null) return;
+        JobInfo job = new JobInfo.Builder(SYNC_JOB_ID, new ComponentName(context, SyncJobService.class))
+                .setMinimumLatency(delay)
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .build();
+        jobScheduler.schedule(job);
+    }
+
+    void cancel() {
+        JobScheduler jobScheduler = ContextCompat.getSystemService(context, JobScheduler.class);
+        if (jobScheduler != null) {
+            jobScheduler.cancel(SYNC_JOB_ID);
+        }
+    }
+
+    boolean hasNetwork() {
+        ConnectivityManager connectivityManager = ContextCompat.getSystemService(context, ConnectivityManager.class);
+        return connectivityManager == null || connectivityManager.getActiveNetwork() != null;
+    }
+}
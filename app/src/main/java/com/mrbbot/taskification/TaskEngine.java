@@ -0,0 +1,269 @@
+package com.mrbbot.taskification;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// the app's one pool of background threads, shared by the activity and the service. work is
+// queued in priority lanes so anything the user is waiting for runs before background syncing.
+// cancelling never interrupts a thread, queued work is dropped and running work stops at the
+// next point it checks isCurrentJobCancelled(), so nothing is left half written
+class TaskEngine {
+    private static final String TAG = "TaskEngine";
+
+    // lanes are run in declaration order, each holding at most its capacity of queued jobs
+    enum Lane {
+        INTERACTIVE(16),
+        SYNC(32);
+
+        final int capacity;
+
+        Lane(int capacity) {
+            this.capacity = capacity;
+        }
+    }
+
+    interface Callback<V> {
+        void onResult(V result);
+
+        void onError(Exception e);
+    }
+
+    // one thread runs a sync while the rest fetch lists in parallel or serve the activity, idle
+    // threads are allowed to die between syncs
+    private static final int THREADS = 4;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    // how long a serial executor waits before trying again to queue its next job on a full lane
+    private static final long SERIAL_RETRY_DELAY_MS = 250;
+
+    private static final TaskEngine INSTANCE = new TaskEngine();
+    private static final ThreadLocal<Job<?>> CURRENT_JOB = new ThreadLocal<>();
+
+    static TaskEngine get() {
+        return INSTANCE;
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // breaks ties within a lane so jobs run in the order they were submitted
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger[] queued = new AtomicInteger[Lane.values().length];
+
+    private TaskEngine() {
+        for (int i = 0; i < queued.length; i++) {
+            queued[i] = new AtomicInteger();
+        }
+        executor = new ThreadPoolExecutor(THREADS, THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "TaskEngine #" + count.incrementAndGet());
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    class Job<V> extends FutureTask<V> implements Comparable<Job<?>> {
+        private final Lane lane;
+        private final long order = sequence.getAndIncrement();
+        @Nullable
+        private final Callback<V> callback;
+        private volatile boolean cancelled;
+
+        Job(Lane lane, Callable<V> callable, @Nullable Callback<V> callback) {
+            super(callable);
+            this.lane = lane;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            queued[lane.ordinal()].decrementAndGet();
+            CURRENT_JOB.set(this);
+            try {
+                super.run();
+            } finally {
+                CURRENT_JOB.remove();
+            }
+        }
+
+        // stops the job running if it hasn't started, and its result being delivered. the thread
+        // is never interrupted, whatever mayInterruptIfRunning says
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            cancelled = true;
+            boolean cancelledNow = super.cancel(false);
+            if (cancelledNow && executor.remove(this)) {
+                queued[lane.ordinal()].decrementAndGet();
+            }
+            return cancelledNow;
+        }
+
+        // only flags the job as cancelled, leaving it to stop itself
+        void requestCancel() {
+            cancelled = true;
+        }
+
+        boolean isCancelRequested() {
+            return cancelled;
+        }
+
+        @Override
+        protected void done() {
+            if (callback == null || isCancelled()) return;
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    // the job may have been cancelled after finishing but before now
+                    if (cancelled) return;
+                    V result;
+                    try {
+                        result = get();
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof Exception) {
+                            callback.onError((Exception) cause);
+                            return;
+                        }
+                        throw new RuntimeException(cause);
+                    } catch (InterruptedException e) {
+                        // can't happen, the job is done
+                        return;
+                    }
+                    callback.onResult(result);
+                }
+            });
+        }
+
+        @Override
+        public int compareTo(@NonNull Job<?> other) {
+            if (lane != other.lane) return lane.compareTo(other.lane);
+            return Long.compare(order, other.order);
+        }
+    }
+
+    // whether the job running on this thread has been cancelled, checked at points where it's
+    // safe to stop
+    static boolean isCurrentJobCancelled() {
+        Job<?> job = CURRENT_JOB.get();
+        return job != null && job.isCancelRequested();
+    }
+
+    <V> Job<V> submit(Lane lane, Callable<V> callable) {
+        return submit(lane, callable, null);
+    }
+
+    // the callback is called on the main thread, unless the job is cancelled first
+    <V> Job<V> submit(Lane lane, Callable<V> callable, @Nullable Callback<V> callback) {
+        Job<V> job = new Job<>(lane, callable, callback);
+        if (queued[lane.ordinal()].incrementAndGet() > lane.capacity) {
+            queued[lane.ordinal()].decrementAndGet();
+            Log.w(TAG, "Rejecting job, " + lane + " lane full");
+            throw new RejectedExecutionException(lane + " lane full");
+        }
+        executor.execute(job);
+        return job;
+    }
+
+    Job<Void> execute(Lane lane, final Runnable runnable) {
+        return submit(lane, new Callable<Void>() {
+            @Override
+            public Void call() {
+                runnable.run();
+                return null;
+            }
+        });
+    }
+
+    // runs work one at a time in submission order, on the shared threads
+    class SerialExecutor implements Executor {
+        private final Lane lane;
+        private final ArrayDeque<Runnable> pending = new ArrayDeque<>();
+        @Nullable
+        private Job<Void> active;
+        private final Runnable retry = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SerialExecutor.this) {
+                    if (active == null) scheduleNext();
+                }
+            }
+        };
+
+        SerialExecutor(Lane lane) {
+            this.lane = lane;
+        }
+
+        // throws RejectedExecutionException if nothing is running or waiting and the lane is full,
+        // otherwise the work is queued behind what's already there and will run
+        @Override
+        public synchronized void execute(@NonNull final Runnable runnable) {
+            Runnable job = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (!isCurrentJobCancelled()) runnable.run();
+                    } finally {
+                        scheduleNext();
+                    }
+                }
+            };
+            if (active == null && pending.isEmpty()) {
+                active = TaskEngine.this.execute(lane, job);
+            } else {
+                pending.add(job);
+                if (active == null) scheduleNext();
+            }
+        }
+
+        // called when a job finishes, where there's no caller to hand a rejection back to. the
+        // job stays pending until there's room for it, as whoever queued it may be waiting on it
+        private synchronized void scheduleNext() {
+            Runnable next = pending.peek();
+            if (next == null) {
+                active = null;
+                return;
+            }
+            try {
+                active = TaskEngine.this.execute(lane, next);
+                pending.poll();
+            } catch (RejectedExecutionException e) {
+                Log.w(TAG, "Retrying " + pending.size() + " serial jobs when " + lane + " lane has room");
+                active = null;
+                mainHandler.postDelayed(retry, SERIAL_RETRY_DELAY_MS);
+            }
+        }
+
+        // drops anything waiting to run, and asks whatever's running to stop. the active job is
+        // left to finish so the next one can't start until it has
+        synchronized void cancel() {
+            pending.clear();
+            if (active != null) {
+                active.requestCancel();
+            }
+        }
+    }
+
+    SerialExecutor newSerialExecutor(Lane lane) {
+        return new SerialExecutor(lane);
+    }
+}
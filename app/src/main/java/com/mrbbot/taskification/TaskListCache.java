@@ -0,0 +1,48 @@
+package com.mrbbot.taskification;
+
+import android.content.SharedPreferences;
+
+import androidx.annotation.Nullable;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.mrbbot.taskification.ForegroundService.SP_TASK_LISTS_CACHED_AT_KEY;
+import static com.mrbbot.taskification.ForegroundService.SP_TASK_LISTS_CACHE_KEY;
+
+// the user's task lists as last fetched by the activity or the service, so the activity can show
+// them straight away and refresh them in the background
+class TaskListCache {
+    // lists older than this are refreshed when the activity opens, the service refreshes them on
+    // every sync anyway
+    private static final long TTL_MS = TimeUnit.MINUTES.toMillis(10);
+
+    @Nullable
+    static List<TasksAPI.TaskList> get(SharedPreferences prefs) {
+        String value = prefs.getString(SP_TASK_LISTS_CACHE_KEY, null);
+        return value == null ? null : SelectedTaskLists.decode(value);
+    }
+
+    static boolean isStale(SharedPreferences prefs) {
+        long age = System.currentTimeMillis() - prefs.getLong(SP_TASK_LISTS_CACHED_AT_KEY, 0);
+        // the clock may have been changed since they were cached
+        return age < 0 || age >= TTL_MS;
+    }
+
+    // returns whether the lists are different to the cached ones
+    static boolean put(SharedPreferences prefs, List<TasksAPI.TaskList> lists) {
+        String value = SelectedTaskLists.encode(lists);
+        boolean changed = !value.equals(prefs.getString(SP_TASK_LISTS_CACHE_KEY, null));
+        SharedPreferences.Editor editor = prefs.edit().putLong(SP_TASK_LISTS_CACHED_AT_KEY, System.currentTimeMillis());
+        if (changed) editor.putString(SP_TASK_LISTS_CACHE_KEY, value);
+        editor.apply();
+        return changed;
+    }
+
+    static void clear(SharedPreferences prefs) {
+        prefs.edit()
+                .remove(SP_TASK_LISTS_CACHE_KEY)
+                .remove(SP_TASK_LISTS_CACHED_AT_KEY)
+                .apply();
+    }
+}
@@ -0,0 +1,228 @@
+package com.mrbbot.taskification;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.mrbbot.taskification.core.Task;
+import com.mrbbot.taskification.core.TaskIndex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+
+class TaskSnapshotStore {
+    private static final String TAG = "TaskSnapshotStore";
+
+    private static final String FILE_PREFIX = "tasks_snapshot_";
+    private static final int VERSION = 2;
+
+    // the last snapshot written or read for each list, so the service and the widget share one
+    // copy in memory and the file is only read when the process starts
+    private static final Map<String, Snapshot> CACHE = new HashMap<>();
+    // files are written one at a time, so an older snapshot can't overwrite a newer one
+    private static final Object FILE_LOCK = new Object();
+
+    static class Snapshot {
+        final String listId;
+        final String listTitle;
+        final List<Task> tasks;
+        // built the first time a filtered view of the tasks is needed, and shared by the service
+        // and the widget
+        @Nullable
+        private TaskIndex index;
+
+        private Snapshot(String listId, String listTitle, List<Task> tasks) {
+            this.listId = listId;
+            this.listTitle = listTitle;
+            this.tasks = tasks;
+        }
+
+        synchronized TaskIndex getIndex() {
+            if (index == null) index = TaskIndex.build(tasks);
+            return index;
+        }
+    }
+
+    // one file per list, the list ID is stored in the file in case two IDs share a hash
+    private static AtomicFile getFile(Context context, String listId) {
+        return new AtomicFile(new File(context.getFilesDir(), FILE_PREFIX + Integer.toHexString(listId.hashCode()) + ".bin"));
+    }
+
+    // the cached snapshot is replaced straight away so the widget sees it, and the file is written
+    // on the engine. cheap enough to call with the service's list states locked
+    static void writeAsync(final Context context, @NonNull String listId, @Nullable String listTitle, @NonNull List<Task> tasks) {
+        final Snapshot snapshot = put(listId, listTitle, tasks);
+        try {
+            TaskEngine.get().execute(TaskEngine.Lane.INTERACTIVE, new Runnable() {
+                @Override
+                public void run() {
+                    writeFile(context, snapshot);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Couldn't queue snapshot write: " + e.getMessage());
+            writeFile(context, snapshot);
+        }
+    }
+
+    private static Snapshot put(String listId, String listTitle, List<Task> tasks) {
+        Snapshot snapshot = new Snapshot(listId, listTitle, tasks);
+        synchronized (CACHE) {
+            CACHE.put(listId, snapshot);
+        }
+        return snapshot;
+    }
+
+    private static void writeFile(Context context, Snapshot snapshot) {
+        synchronized (FILE_LOCK) {
+            // a newer snapshot has been written since, or the snapshots were deleted on sign out
+            synchronized (CACHE) {
+                if (CACHE.get(snapshot.listId) != snapshot) return;
+            }
+            AtomicFile file = getFile(context, snapshot.listId);
+            FileOutputStream stream = null;
+            try {
+                stream = file.startWrite();
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+                out.writeInt(VERSION);
+                out.writeUTF(snapshot.listId);
+                writeNullableString(out, snapshot.listTitle);
+                writeTasks(out, snapshot.tasks);
+                out.flush();
+                file.finishWrite(stream);
+            } catch (IOException e) {
+                Log.e(TAG, "Error writing snapshot: " + e.getMessage());
+                if (stream != null) {
+                    file.failWrite(stream);
+                }
+            }
+        }
+    }
+
+    @Nullable
+    static Snapshot read(Context context, @NonNull String listId) {
+        synchronized (CACHE) {
+            Snapshot cached = CACHE.get(listId);
+            if (cached != null) return cached;
+        }
+        Snapshot snapshot = readFile(context, listId);
+        if (snapshot != null) {
+            synchronized (CACHE) {
+                // a newer snapshot may have been written while reading the file
+                Snapshot cached = CACHE.get(listId);
+                if (cached != null) return cached;
+                CACHE.put(listId, snapshot);
+            }
+        }
+        return snapshot;
+    }
+
+    @Nullable
+    private static Snapshot readFile(Context context, @NonNull String listId) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(getFile(context, listId).openRead()))) {
+            if (in.readInt() != VERSION) return null;
+            if (!listId.equals(in.readUTF())) return null;
+            String listTitle = readNullableString(in);
+            List<Task> tasks = readTasks(in, 0);
+            return new Snapshot(listId, listTitle, tasks);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading snapshot: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // the index of the list's tasks, the cached snapshot's if they're the tree it holds
+    static TaskIndex getIndex(@NonNull String listId, @NonNull List<Task> tasks) {
+        Snapshot cached;
+        synchronized (CACHE) {
+            cached = CACHE.get(listId);
+        }
+        return cached != null && cached.tasks == tasks ? cached.getIndex() : TaskIndex.build(tasks);
+    }
+
+    // drops the cached indexes, they're built again the next time a filtered view is needed
+    static void trimIndexes() {
+        synchronized (CACHE) {
+            for (Snapshot snapshot : CACHE.values()) {
+                synchronized (snapshot) {
+                    snapshot.index = null;
+                }
+            }
+        }
+    }
+
+    // drops the cached snapshots of every other list, they're read from disk again if needed
+    static void trim(Set<String> keepListIds) {
+        synchronized (CACHE) {
+            CACHE.keySet().retainAll(keepListIds);
+        }
+    }
+
+    static void deleteAll(Context context) {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+        synchronized (FILE_LOCK) {
+            File[] files = context.getFilesDir().listFiles();
+            if (files == null) return;
+            for (File file : files) {
+                if (file.getName().startsWith(FILE_PREFIX)) {
+                    new AtomicFile(file).delete();
+                }
+            }
+        }
+    }
+
+    private static void writeTasks(DataOutputStream out, List<Task> tasks) throws IOException {
+        out.writeInt(tasks.size());
+        for (Task task : tasks) {
+            out.writeUTF(task.id);
+            writeNullableString(out, task.title);
+            writeNullableString(out, task.notes);
+            out.writeLong(task.due);
+            writeTasks(out, task.subTasks);
+        }
+    }
+
+    private static List<Task> readTasks(DataInputStream in, int depth) throws IOException {
+        int size = in.readInt();
+        List<Task> tasks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String id = in.readUTF();
+            String title = readNullableString(in);
+            String notes = readNullableString(in);
+            long due = in.readLong();
+            List<Task> subTasks = readTasks(in, depth + 1);
+            tasks.add(new Task(id, title, notes, due, depth, subTasks));
+        }
+        return Collections.unmodifiableList(tasks);
+    }
+
+    private static void writeNullableString(DataOutputStream out, @Nullable String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    @Nullable
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,74 @@
+package com.mrbbot.taskification;
+
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+
+import com.mrbbot.taskification.core.TaskQuery;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.mrbbot.taskification.ForegroundService.SP_VIEW_DUE_DAYS_KEY;
+import static com.mrbbot.taskification.ForegroundService.SP_VIEW_SORT_KEY;
+import static com.mrbbot.taskification.ForegroundService.SP_VIEW_TEXT_KEY;
+import static com.mrbbot.taskification.ForegroundService.SP_VIEW_TOP_LEVEL_KEY;
+
+// the filter and sort order applied to every list's notification, chosen in the activity
+class TaskView {
+    @NonNull
+    static TaskQuery load(SharedPreferences prefs) {
+        TaskQuery.Sort sort;
+        try {
+            sort = TaskQuery.Sort.valueOf(prefs.getString(SP_VIEW_SORT_KEY, TaskQuery.Sort.POSITION.name()));
+        } catch (IllegalArgumentException e) {
+            sort = TaskQuery.Sort.POSITION;
+        }
+        return new TaskQuery(
+                prefs.getInt(SP_VIEW_DUE_DAYS_KEY, TaskQuery.ANY_DUE),
+                prefs.getString(SP_VIEW_TEXT_KEY, null),
+                prefs.getBoolean(SP_VIEW_TOP_LEVEL_KEY, false),
+                sort
+        );
+    }
+
+    static void save(SharedPreferences prefs, TaskQuery query) {
+        prefs.edit()
+                .putInt(SP_VIEW_DUE_DAYS_KEY, query.dueWithinDays)
+                .putString(SP_VIEW_TEXT_KEY, query.text)
+                .putBoolean(SP_VIEW_TOP_LEVEL_KEY, query.topLevelOnly)
+                .putString(SP_VIEW_SORT_KEY, query.sort.name())
+                .apply();
+    }
+
+    static void clear(SharedPreferences prefs) {
+        prefs.edit()
+                .remove(SP_VIEW_DUE_DAYS_KEY)
+                .remove(SP_VIEW_TEXT_KEY)
+                .remove(SP_VIEW_TOP_LEVEL_KEY)
+                .remove(SP_VIEW_SORT_KEY)
+                .apply();
+    }
+
+    // a short description for the activity's button, e.g. "Due in 3 days, @work"
+    @NonNull
+    static String describe(TaskQuery query) {
+        if (query.isAll()) return "All tasks";
+        List<String> parts = new ArrayList<>();
+        if (query.dueWithinDays == 0) {
+            parts.add("Due today");
+        } else if (query.dueWithinDays != TaskQuery.ANY_DUE) {
+            parts.add("Due in " + query.dueWithinDays + (query.dueWithinDays == 1 ? " day" : " days"));
+        }
+        if (query.text != null) parts.add(query.text);
+        if (query.topLevelOnly) parts.add("top level");
+        if (query.sort == TaskQuery.Sort.DUE_DATE) parts.add("by due date");
+        StringBuilder description = new StringBuilder();
+        for (String part : parts) {
+            if (description.length() > 0) description.append(", ");
+            description.append(part);
+        }
+        description.setCharAt(0, Character.toUpperCase(description.charAt(0)));
+        return description.toString();
+    }
+}
@@ -0,0 +1,258 @@
+package com.mrbbot.taskification;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.auth.GoogleAuthException;
+import com.google.android.gms.auth.GoogleAuthUtil;
+import com.google.android.gms.auth.UserRecoverableAuthException;
+import com.google.android.gms.auth.api.signin.GoogleSignIn;
+import com.google.android.gms.auth.api.signin.GoogleSignInAccount;
+import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAccountCredential;
+import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAuthIOException;
+import com.google.api.client.googleapis.extensions.android.gms.auth.UserRecoverableAuthIOException;
+import com.google.api.client.http.HttpExecuteInterceptor;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpStatusCodes;
+import com.google.api.client.http.HttpUnsuccessfulResponseHandler;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.tasks.Tasks;
+import com.google.api.services.tasks.TasksScopes;
+import com.mrbbot.taskification.core.OkHttpTransport;
+import com.mrbbot.taskification.core.SyncMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+class TasksService {
+    private static final String TAG = "TasksService";
+
+    private static final Collection<String> TASK_SCOPES = Collections.singleton(TasksScopes.TASKS);
+    private static final String HTTP_CACHE_DIRECTORY = "http";
+    private static final JsonFactory JSON_FACTORY = JacksonFactory.getDefaultInstance();
+
+    // access tokens last an hour, treat them as expired a little before that and start
+    // refreshing them in the background before they expire so syncs don't have to wait
+    private static final long TOKEN_LIFETIME_MS = TimeUnit.MINUTES.toMillis(55);
+    private static final long TOKEN_REFRESH_MS = TimeUnit.MINUTES.toMillis(45);
+
+    // shared by every account so connections are kept alive across sign ins
+    private static OkHttpTransport transport;
+    private static TasksService instance;
+
+    static {
+        MemoryBudget.register(MemoryBudget.Priority.SYNC_STATE, new MemoryBudget.Trimmable() {
+            @Override
+            public void trim() {
+                OkHttpTransport currentTransport;
+                synchronized (TasksService.class) {
+                    currentTransport = transport;
+                }
+                if (currentTransport != null) currentTransport.evictConnections();
+            }
+        });
+    }
+
+    @Nullable
+    static synchronized Tasks get(Context context) {
+        GoogleSignInAccount account = GoogleSignIn.getLastSignedInAccount(context);
+        if (account == null || account.getAccount() == null) {
+            invalidate();
+            return null;
+        }
+        String accountName = account.getAccount().name;
+        if (instance == null || !instance.accountName.equals(accountName)) {
+            Log.d(TAG, "Creating service for " + accountName + "...");
+            if (instance != null) {
+                // a different account, don't let it revalidate the previous account's responses
+                invalidate();
+            }
+            if (transport == null) {
+                transport = OkHttpTransport.create(new File(context.getCacheDir(), HTTP_CACHE_DIRECTORY));
+            }
+            instance = new TasksService(context.getApplicationContext(), account, transport);
+        }
+        return instance.service;
+    }
+
+    // called on sign out, drops the client and clears the cached token and responses
+    static synchronized void invalidate() {
+        if (instance != null) {
+            instance.credential.clearToken();
+            instance = null;
+        }
+        final OkHttpTransport currentTransport = transport;
+        if (currentTransport == null) return;
+        TaskEngine.get().execute(TaskEngine.Lane.SYNC, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    currentTransport.clearCache();
+                } catch (IOException e) {
+                    Log.w(TAG, "Error clearing HTTP cache: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    private final String accountName;
+    private final CachedTokenCredential credential;
+    private final Tasks service;
+
+    private TasksService(Context context, GoogleSignInAccount account, OkHttpTransport transport) {
+        this.accountName = account.getAccount().name;
+
+        GoogleAccountCredential accountCredential = GoogleAccountCredential.usingOAuth2(context, TASK_SCOPES);
+        accountCredential.setSelectedAccount(account.getAccount());
+        this.credential = new CachedTokenCredential(accountCredential);
+        this.service = new Tasks.Builder(transport, JSON_FACTORY, credential)
+                .setApplicationName("Tasks Notification")
+                .build();
+    }
+
+    private static class CachedTokenCredential implements HttpRequestInitializer {
+        private final GoogleAccountCredential accountCredential;
+
+        private String token;
+        private long tokenFetchedAt;
+        private boolean refreshing;
+
+        CachedTokenCredential(GoogleAccountCredential accountCredential) {
+            this.accountCredential = accountCredential;
+        }
+
+        @Override
+        public void initialize(HttpRequest request) {
+            RequestHandler handler = new RequestHandler();
+            request.setInterceptor(handler);
+            request.setUnsuccessfulResponseHandler(handler);
+        }
+
+        synchronized String getToken() throws IOException {
+            long age = SystemClock.elapsedRealtime() - tokenFetchedAt;
+            if (token == null || age >= TOKEN_LIFETIME_MS) {
+                // there's no token to use in the meantime, so other requests wait for this one
+                token = fetchToken();
+                tokenFetchedAt = SystemClock.elapsedRealtime();
+            } else if (age >= TOKEN_REFRESH_MS && !refreshing) {
+                refreshing = true;
+                try {
+                    refreshTokenInBackground();
+                } catch (RejectedExecutionException e) {
+                    // the current token is still valid, try again on the next request
+                    refreshing = false;
+                }
+            }
+            return token;
+        }
+
+        // requests keep using the current token while the new one is fetched, the lock is only
+        // taken to read and swap it
+        private void refreshTokenInBackground() {
+            TaskEngine.get().execute(TaskEngine.Lane.SYNC, new Runnable() {
+                @Override
+                public void run() {
+                    String oldToken;
+                    synchronized (CachedTokenCredential.this) {
+                        oldToken = token;
+                    }
+                    try {
+                        // drop the old token first, otherwise play services returns it again
+                        if (oldToken != null) {
+                            GoogleAuthUtil.clearToken(accountCredential.getContext(), oldToken);
+                        }
+                        String newToken = fetchToken();
+                        synchronized (CachedTokenCredential.this) {
+                            // cleared or replaced while fetching, whatever happened since is newer
+                            if (token != null && token.equals(oldToken)) {
+                                token = newToken;
+                                tokenFetchedAt = SystemClock.elapsedRealtime();
+                            }
+                        }
+                    } catch (IOException | GoogleAuthException e) {
+                        Log.w(TAG, "Error refreshing token: " + e.getMessage());
+                    } finally {
+                        synchronized (CachedTokenCredential.this) {
+                            refreshing = false;
+                        }
+                    }
+                }
+            });
+        }
+
+        private String fetchToken() throws IOException {
+            Log.d(TAG, "Fetching token...");
+            try {
+                return accountCredential.getToken();
+            } catch (UserRecoverableAuthException e) {
+                throw new UserRecoverableAuthIOException(e);
+            } catch (GoogleAuthException e) {
+                throw new GoogleAuthIOException(e);
+            }
+        }
+
+        // keeps the lock while clearing, so no one fetches the rejected token again before it's gone
+        synchronized void invalidateToken(String rejectedToken) {
+            if (rejectedToken == null || !rejectedToken.equals(token)) return;
+            token = null;
+            try {
+                GoogleAuthUtil.clearToken(accountCredential.getContext(), rejectedToken);
+            } catch (IOException | GoogleAuthException e) {
+                Log.w(TAG, "Error clearing token: " + e.getMessage());
+            }
+        }
+
+        void clearToken() {
+            final String currentToken;
+            synchronized (this) {
+                currentToken = token;
+                token = null;
+            }
+            if (currentToken == null) return;
+            TaskEngine.get().execute(TaskEngine.Lane.SYNC, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        GoogleAuthUtil.clearToken(accountCredential.getContext(), currentToken);
+                    } catch (IOException | GoogleAuthException e) {
+                        Log.w(TAG, "Error clearing token: " + e.getMessage());
+                    }
+                }
+            });
+        }
+
+        private class RequestHandler implements HttpExecuteInterceptor, HttpUnsuccessfulResponseHandler {
+            private String requestToken;
+            private boolean received401;
+
+            @Override
+            public void intercept(HttpRequest request) throws IOException {
+                long start = SyncMetrics.start();
+                requestToken = getToken();
+                SyncMetrics.record(SyncMetrics.Stage.TOKEN, start);
+                request.getHeaders().setAuthorization("Bearer " + requestToken);
+            }
+
+            @Override
+            public boolean handleResponse(HttpRequest request, HttpResponse response, boolean supportsRetry) {
+                // the token was revoked or expired early, clear it and retry once with a new one
+                if (response.getStatusCode() == HttpStatusCodes.STATUS_CODE_UNAUTHORIZED && !received401) {
+                    received401 = true;
+                    invalidateToken(requestToken);
+                    return true;
+                }
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.mrbbot.taskification;
+
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProvider;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.util.Log;
+import android.widget.RemoteViews;
+
+// a scrollable widget showing the selected lists, rendered from the snapshots the service keeps so
+// it never makes requests of its own. it has no update period, the service tells it when to update
+public class TasksWidgetProvider extends AppWidgetProvider {
+    private static final String TAG = "TasksWidgetProvider";
+
+    @Override
+    public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+        for (int appWidgetId : appWidgetIds) {
+            appWidgetManager.updateAppWidget(appWidgetId, createViews(context, appWidgetId));
+        }
+    }
+
+    private static RemoteViews createViews(Context context, int appWidgetId) {
+        Intent serviceIntent = new Intent(context, TasksWidgetService.class);
+        serviceIntent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, appWidgetId);
+        // the data makes each widget's intent distinct, so each gets its own factory
+        serviceIntent.setData(Uri.parse(serviceIntent.toUri(Intent.URI_INTENT_SCHEME)));
+
+        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_tasks);
+        views.setRemoteAdapter(R.id.widget_list_view, serviceIntent);
+        views.setEmptyView(R.id.widget_list_view, R.id.widget_empty_view);
+
+        PendingIntent openIntent = PendingIntent.getActivity(context, 0, ForegroundService.getTasksAppIntent(context), 0);
+        views.setOnClickPendingIntent(R.id.widget_title_view, openIntent);
+        views.setPendingIntentTemplate(R.id.widget_list_view, openIntent);
+        return views;
+    }
+
+    // called whenever a snapshot, the selected lists or the view changes, only the collection is
+    // reloaded, from the snapshots already in memory
+    static void notifyChanged(Context context) {
+        AppWidgetManager manager = AppWidgetManager.getInstance(context);
+        int[] appWidgetIds = manager.getAppWidgetIds(new ComponentName(context, TasksWidgetProvider.class));
+        if (appWidgetIds.length == 0) return;
+        Log.d(TAG, "Updating " + appWidgetIds.length + " widgets...");
+        manager.notifyAppWidgetViewDataChanged(appWidgetIds, R.id.widget_list_view);
+    }
+}
@@ -0,0 +1,135 @@
+package com.mrbbot.taskification;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.widget.RemoteViews;
+import android.widget.RemoteViewsService;
+
+import com.mrbbot.taskification.core.DueDateLabeller;
+import com.mrbbot.taskification.core.Task;
+import com.mrbbot.taskification.core.TaskFormatter;
+import com.mrbbot.taskification.core.TaskQuery;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TasksWidgetService extends RemoteViewsService {
+    @Override
+    public RemoteViewsFactory onGetViewFactory(Intent intent) {
+        return new TasksWidgetFactory(getApplicationContext());
+    }
+
+    // a row of the widget, either a list's title, one of its tasks, or the number of tasks left out
+    private static class Row {
+        final String listId;
+        final Task task;
+        final CharSequence text;
+        final boolean header;
+
+        Row(String listId, Task task, CharSequence text, boolean header) {
+            this.listId = listId;
+            this.task = task;
+            this.text = text;
+            this.header = header;
+        }
+    }
+
+    private static class TasksWidgetFactory implements RemoteViewsFactory {
+        private static final int VIEW_TYPE_COUNT = 2;
+        // more than even a full screen widget shows, the rest are counted in a "+N more" row
+        private static final int MAX_TASK_ROWS = 50;
+
+        private final Context context;
+        private List<Row> rows = new ArrayList<>();
+
+        TasksWidgetFactory(Context context) {
+            this.context = context;
+        }
+
+        @Override
+        public void onCreate() {
+        }
+
+        // rebuilds the rows from the snapshots, with the same view as the notifications
+        @Override
+        public void onDataSetChanged() {
+            SharedPreferences prefs = context.getSharedPreferences(context.getString(R.string.preference_file_key), Context.MODE_PRIVATE);
+            TaskQuery query = TaskView.load(prefs);
+            DueDateLabeller labeller = new DueDateLabeller(LocalDate.now());
+            List<Row> newRows = new ArrayList<>();
+            for (TasksAPI.TaskList list : SelectedTaskLists.load(prefs)) {
+                TaskSnapshotStore.Snapshot snapshot = TaskSnapshotStore.read(context, list.id);
+                if (snapshot == null) continue;
+                newRows.add(new Row(list.id, null, list.title, true));
+                // the index is shared with the service's notifications, and only built on a change
+                List<Task> tasks = query.isAll() ? snapshot.tasks : snapshot.getIndex().query(query, labeller.getToday());
+                int hiddenTasks = Task.treeSize(tasks) - MAX_TASK_ROWS + addRows(tasks, labeller, newRows, MAX_TASK_ROWS);
+                if (hiddenTasks > 0) {
+                    newRows.add(new Row(list.id, null, "+" + hiddenTasks + " more", false));
+                }
+            }
+            rows = newRows;
+        }
+
+        // adds rows for the tasks and their sub tasks until there are no rows left, returns how
+        // many are left
+        private static int addRows(List<Task> tasks, DueDateLabeller labeller, List<Row> rows, int rowsLeft) {
+            for (Task task : tasks) {
+                if (rowsLeft == 0) break;
+                rows.add(new Row(null, task, ForegroundService.toSpannable(TaskFormatter.format(task, labeller)), false));
+                rowsLeft = addRows(task.subTasks, labeller, rows, rowsLeft - 1);
+            }
+            return rowsLeft;
+        }
+
+        @Override
+        public void onDestroy() {
+            rows = new ArrayList<>();
+        }
+
+        @Override
+        public int getCount() {
+            return rows.size();
+        }
+
+        @Override
+        public RemoteViews getViewAt(int position) {
+            if (position >= rows.size()) return null;
+            Row row = rows.get(position);
+            RemoteViews views;
+            if (row.header) {
+                views = new RemoteViews(context.getPackageName(), R.layout.widget_list_header);
+                views.setTextViewText(R.id.widget_list_title_view, row.text);
+            } else {
+                views = new RemoteViews(context.getPackageName(), R.layout.widget_task_item);
+                views.setTextViewText(R.id.widget_task_text_view, row.text);
+                views.setOnClickFillInIntent(R.id.widget_task_text_view, new Intent());
+            }
+            return views;
+        }
+
+        @Override
+        public RemoteViews getLoadingView() {
+            return null;
+        }
+
+        @Override
+        public int getViewTypeCount() {
+            return VIEW_TYPE_COUNT;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            Row row = rows.get(position);
+            if (row.task != null) return row.task.id.hashCode();
+            return ((row.header ? "list:" : "more:") + row.listId).hashCode();
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return true;
+        }
+    }
+}
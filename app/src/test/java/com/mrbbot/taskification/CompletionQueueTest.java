@@ -0,0 +1,81 @@
+package com.mrbbot.taskification;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class CompletionQueueTest {
+    private SharedPreferences prefs;
+    private CompletionQueue queue;
+
+    @Before
+    public void setUp() {
+        prefs = RuntimeEnvironment.application.getSharedPreferences("CompletionQueueTest", Context.MODE_PRIVATE);
+        queue = new CompletionQueue(prefs);
+    }
+
+    @Test
+    public void tracksPendingCompletions() {
+        assertTrue(queue.isEmpty());
+        queue.add("a", "1");
+        queue.add("a", "2");
+        queue.add("b", "3");
+        // completing the same task twice only sends it once
+        queue.add("a", "1");
+
+        assertTrue(queue.isPending("a", "1"));
+        assertFalse(queue.isPending("b", "1"));
+        assertEquals(new HashSet<>(Arrays.asList("1", "2")), queue.getPending("a"));
+        assertEquals(Collections.<String>emptySet(), queue.getPending("c"));
+        assertEquals("{a=[1, 2], b=[3]}", queue.getAll().toString());
+
+        queue.remove("a", "1");
+        queue.remove("b", "3");
+        // already sent
+        queue.remove("b", "3");
+        assertEquals("{a=[2]}", queue.getAll().toString());
+        queue.remove("a", "2");
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void returnsCopies() {
+        queue.add("a", "1");
+        Set<String> pending = queue.getPending("a");
+        queue.add("a", "2");
+        assertEquals(Collections.singleton("1"), pending);
+        queue.getAll().get("a").clear();
+        assertTrue(queue.isPending("a", "2"));
+    }
+
+    @Test
+    public void restoresFromPrefs() {
+        queue.add("a", "1");
+        queue.add("b", "2");
+        queue.add("a", "3");
+        queue.remove("b", "2");
+
+        // like after the process restarts
+        CompletionQueue restored = new CompletionQueue(prefs);
+        assertEquals("{a=[1, 3]}", restored.getAll().toString());
+
+        restored.clear();
+        assertTrue(restored.isEmpty());
+        assertTrue(new CompletionQueue(prefs).isEmpty());
+    }
+}
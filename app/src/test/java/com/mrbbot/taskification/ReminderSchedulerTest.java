@@ -0,0 +1,142 @@
+package com.mrbbot.taskification;
+
+import android.app.AlarmManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.mrbbot.taskification.core.Task;
+import com.mrbbot.taskification.core.TaskItem;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowAlarmManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+public class ReminderSchedulerTest {
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+
+    private Context context;
+    private SharedPreferences prefs;
+    private ShadowAlarmManager alarmManager;
+    private ReminderScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.application;
+        prefs = context.getSharedPreferences("ReminderSchedulerTest", Context.MODE_PRIVATE);
+        alarmManager = shadowOf((AlarmManager) context.getSystemService(Context.ALARM_SERVICE));
+        scheduler = new ReminderScheduler(context, prefs);
+    }
+
+    // due at midnight UTC the given number of days from today, like the API sends
+    private static long dueIn(int days) {
+        return (LocalDate.now().toEpochDay() + days) * DAY_MS;
+    }
+
+    private static Task task(String id, long due) {
+        return new Task(id, "Task " + id, null, due, 0, Collections.<Task>emptyList());
+    }
+
+    // tasks due on consecutive days, from tomorrow
+    private static List<Task> tasks(String prefix, int count) {
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            tasks.add(task(prefix + i, dueIn(i + 1)));
+        }
+        return tasks;
+    }
+
+    // map mapping "list ID/task ID" to trigger time of every alarm set
+    private Map<String, Long> alarms() {
+        Map<String, Long> alarms = new TreeMap<>();
+        for (ShadowAlarmManager.ScheduledAlarm alarm : alarmManager.getScheduledAlarms()) {
+            String key = shadowOf(alarm.operation).getSavedIntent().getData().getSchemeSpecificPart();
+            alarms.put(key, alarm.triggerAtTime);
+        }
+        return alarms;
+    }
+
+    @Test
+    public void setsAlarmsForEarliestReminders() {
+        scheduler.update("a", tasks("a", 30));
+        scheduler.update("b", tasks("b", 30));
+
+        Map<String, Long> alarms = alarms();
+        assertEquals(ReminderScheduler.MAX_ALARMS, alarms.size());
+        // the lists' reminders alternate day by day
+        for (int i = 0; i < ReminderScheduler.MAX_ALARMS / 2; i++) {
+            assertEquals(ReminderScheduler.getTriggerTime(dueIn(i + 1)), (long) alarms.get("a/a" + i));
+            assertTrue(alarms.containsKey("b/b" + i));
+        }
+    }
+
+    @Test
+    public void setsNextAlarmWhenOneFires() {
+        scheduler.update("a", tasks("a", 30));
+        assertTrue(alarms().containsKey("a/a0"));
+        assertFalse(alarms().containsKey("a/a20"));
+
+        // delivered at the trigger time, so the alarm manager has dropped it
+        alarmManager.getScheduledAlarms().remove(alarmManager.getNextScheduledAlarm());
+        scheduler.onFired("a", "a0");
+        assertEquals(ReminderScheduler.MAX_ALARMS, alarms().size());
+        assertTrue(alarms().containsKey("a/a20"));
+        // already handled
+        assertFalse(scheduler.onFired("a", "a0"));
+    }
+
+    @Test
+    public void diffsAgainstScheduledReminders() {
+        List<Task> tasks = new ArrayList<>(tasks("a", 3));
+        // already past, and no due date at all
+        tasks.add(task("past", dueIn(-2)));
+        tasks.add(task("none", TaskItem.NO_DUE));
+        scheduler.update("a", tasks);
+        assertEquals("{a/a0=" + ReminderScheduler.getTriggerTime(dueIn(1))
+                + ", a/a1=" + ReminderScheduler.getTriggerTime(dueIn(2))
+                + ", a/a2=" + ReminderScheduler.getTriggerTime(dueIn(3)) + "}", alarms().toString());
+
+        // a1 moves, a2 is completed
+        tasks = new ArrayList<>();
+        tasks.add(task("a0", dueIn(1)));
+        tasks.add(task("a1", dueIn(5)));
+        scheduler.update("a", tasks);
+        assertEquals("{a/a0=" + ReminderScheduler.getTriggerTime(dueIn(1))
+                + ", a/a1=" + ReminderScheduler.getTriggerTime(dueIn(5)) + "}", alarms().toString());
+
+        scheduler.remove("a");
+        assertTrue(alarms().isEmpty());
+    }
+
+    @Test
+    public void restoresRemindersFromPrefs() {
+        scheduler.update("a", tasks("a", 30));
+        alarmManager.getScheduledAlarms().clear();
+
+        // like after a reboot, the alarms set are the earliest of the saved reminders
+        ReminderScheduler restored = new ReminderScheduler(context, prefs);
+        restored.rescheduleAll();
+        assertEquals(ReminderScheduler.MAX_ALARMS, alarms().size());
+        assertTrue(alarms().containsKey("a/a0"));
+
+        restored.clear();
+        assertTrue(alarms().isEmpty());
+        assertFalse(new ReminderScheduler(context, prefs).onFired("a", "a0"));
+    }
+}
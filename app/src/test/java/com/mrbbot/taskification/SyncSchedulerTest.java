@@ -0,0 +1,105 @@
+package com.mrbbot.taskification;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowNetworkInfo;
+import org.robolectric.shadows.ShadowSystemClock;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+public class SyncSchedulerTest {
+    private static final long MINUTE_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private ConnectivityManager connectivityManager;
+    private SyncScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.application;
+        connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        setNetwork(ConnectivityManager.TYPE_WIFI);
+        scheduler = new SyncScheduler(context);
+    }
+
+    private void setNetwork(int type) {
+        shadowOf(connectivityManager).setActiveNetworkInfo(ShadowNetworkInfo.newInstance(
+                NetworkInfo.DetailedState.CONNECTED, type, 0, true, NetworkInfo.State.CONNECTED));
+    }
+
+    @Test
+    public void backsOffWithJitterAfterFailures() {
+        long[] backoffs = {5 * MINUTE_MS, 10 * MINUTE_MS, 20 * MINUTE_MS, 30 * MINUTE_MS, 30 * MINUTE_MS};
+        for (long backoff : backoffs) {
+            scheduler.onFailure();
+            Set<Long> delays = new HashSet<>();
+            for (int i = 0; i < 50; i++) {
+                long delay = scheduler.getNextDelay();
+                assertTrue(delay + " for " + backoff, delay >= backoff / 2 && delay < backoff);
+                delays.add(delay);
+            }
+            // spread out, so devices that failed together don't retry together
+            assertTrue(delays.size() > 1);
+        }
+
+        // and back to normal once a sync works
+        scheduler.onSuccess(true);
+        assertEquals(5 * MINUTE_MS, scheduler.getNextDelay());
+    }
+
+    @Test
+    public void slowsDownWhenNothingChanges() {
+        long[] intervals = {5, 5, 5, 10, 15, 15};
+        for (long interval : intervals) {
+            scheduler.onSuccess(false);
+            assertEquals(interval * MINUTE_MS, scheduler.getNextDelay());
+        }
+        scheduler.onSuccess(true);
+        assertEquals(5 * MINUTE_MS, scheduler.getNextDelay());
+    }
+
+    @Test
+    public void pollsOftenAfterInteraction() {
+        for (int i = 0; i < 5; i++) {
+            scheduler.onSuccess(false);
+        }
+        // just synced, so an interaction doesn't need another sync yet
+        assertFalse(scheduler.isInteractiveSyncDue());
+        ShadowSystemClock.advanceBy(Duration.ofMinutes(1));
+        assertTrue(scheduler.isInteractiveSyncDue());
+
+        scheduler.onInteraction();
+        assertEquals(MINUTE_MS, scheduler.getNextDelay());
+        ShadowSystemClock.advanceBy(Duration.ofMinutes(4));
+        assertEquals(MINUTE_MS, scheduler.getNextDelay());
+
+        // the interaction also reset the unchanged polls
+        ShadowSystemClock.advanceBy(Duration.ofMinutes(1));
+        assertEquals(5 * MINUTE_MS, scheduler.getNextDelay());
+    }
+
+    @Test
+    public void pollsLessOftenOnMeteredNetworks() {
+        setNetwork(ConnectivityManager.TYPE_MOBILE);
+        assertEquals(10 * MINUTE_MS, scheduler.getNextDelay());
+        for (int i = 0; i < 5; i++) {
+            scheduler.onSuccess(false);
+        }
+        assertEquals(15 * MINUTE_MS, scheduler.getNextDelay());
+    }
+}
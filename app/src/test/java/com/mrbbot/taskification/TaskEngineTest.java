@@ -0,0 +1,171 @@
+package com.mrbbot.taskification;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class TaskEngineTest {
+    private static final long TIMEOUT_S = 5;
+    // the engine's threads
+    private static final int THREADS = 4;
+
+    // released at the end of each test, so nothing is left blocking the shared engine
+    private final CountDownLatch gate = new CountDownLatch(1);
+
+    private Runnable waitForGate(final CountDownLatch started) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    gate.await(TIMEOUT_S, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    // the engine is shared between tests, wait until every thread is free to run something, so
+    // nothing queued by an earlier test is left
+    @Before
+    public void waitForIdle() throws InterruptedException {
+        final CountDownLatch free = new CountDownLatch(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            TaskEngine.get().execute(TaskEngine.Lane.SYNC, new Runnable() {
+                @Override
+                public void run() {
+                    free.countDown();
+                    try {
+                        free.await(TIMEOUT_S, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        assertTrue(free.await(TIMEOUT_S, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void openGate() {
+        gate.countDown();
+    }
+
+    // keeps the given number of threads busy until the gate opens, so nothing takes jobs off a
+    // full lane
+    private void occupyThreads(int threads) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            TaskEngine.get().execute(TaskEngine.Lane.INTERACTIVE, waitForGate(started));
+        }
+        assertTrue(started.await(TIMEOUT_S, TimeUnit.SECONDS));
+    }
+
+    // queues jobs that wait for the gate until the lane rejects one
+    private void fillLane(TaskEngine.Lane lane) {
+        Runnable job = waitForGate(new CountDownLatch(0));
+        while (true) {
+            try {
+                TaskEngine.get().execute(lane, job);
+            } catch (RejectedExecutionException e) {
+                return;
+            }
+        }
+    }
+
+    @Test
+    public void serialJobsWaitForFullLane() throws InterruptedException {
+        TaskEngine.SerialExecutor executor = TaskEngine.get().newSerialExecutor(TaskEngine.Lane.SYNC);
+        final CountDownLatch secondQueued = new CountDownLatch(1);
+        final CountDownLatch laneFull = new CountDownLatch(1);
+        final CountDownLatch secondRan = new CountDownLatch(1);
+        // set when a sync is queued and cleared when it runs, like the service's syncQueued
+        final AtomicBoolean queued = new AtomicBoolean(true);
+        // the serial executor gets the one thread left
+        occupyThreads(THREADS - 1);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    secondQueued.await(TIMEOUT_S, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                // the next job can't be queued when this one finishes
+                fillLane(TaskEngine.Lane.SYNC);
+                laneFull.countDown();
+            }
+        });
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                queued.set(false);
+                secondRan.countDown();
+            }
+        });
+        secondQueued.countDown();
+
+        assertTrue(laneFull.await(TIMEOUT_S, TimeUnit.SECONDS));
+        assertFalse(secondRan.await(100, TimeUnit.MILLISECONDS));
+
+        // once the lane drains the retry queues it
+        gate.countDown();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_S);
+        while (secondRan.getCount() > 0 && System.currentTimeMillis() < deadline) {
+            ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+            secondRan.await(50, TimeUnit.MILLISECONDS);
+        }
+        assertFalse(queued.get());
+    }
+
+    @Test
+    public void rejectsToCallerWhenNothingQueued() throws InterruptedException {
+        TaskEngine.SerialExecutor executor = TaskEngine.get().newSerialExecutor(TaskEngine.Lane.SYNC);
+        occupyThreads(THREADS);
+        fillLane(TaskEngine.Lane.SYNC);
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            fail("Queued on a full lane");
+        } catch (RejectedExecutionException e) {
+            // expected, the caller clears whatever it set
+        }
+        gate.countDown();
+
+        // still usable once there's room
+        final CountDownLatch ran = new CountDownLatch(1);
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_S);
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        ran.countDown();
+                    }
+                });
+                break;
+            } catch (RejectedExecutionException e) {
+                Thread.sleep(50);
+            }
+        }
+        assertTrue(ran.await(TIMEOUT_S, TimeUnit.SECONDS));
+    }
+}
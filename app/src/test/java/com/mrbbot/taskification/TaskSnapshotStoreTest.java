@@ -0,0 +1,162 @@
+package com.mrbbot.taskification;
+
+import android.content.Context;
+
+import com.mrbbot.taskification.core.Task;
+import com.mrbbot.taskification.core.TaskItem;
+import com.mrbbot.taskification.core.TaskTreeBuilder;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class TaskSnapshotStoreTest {
+    private static final long TIMEOUT_S = 5;
+    // the engine's threads
+    private static final int THREADS = 4;
+    private static final String LIST_ID = "list";
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.application;
+        // the cache is shared between tests
+        TaskSnapshotStore.deleteAll(context);
+    }
+
+    // a (a1 (a1x)), b, with and without notes, titles and due dates
+    private static List<Task> tree() {
+        Map<String, TaskItem> items = new HashMap<>();
+        items.put("a", new TaskItem("a", "e", "Task a", "Notes\nover lines", null, "1", 1586649600000L));
+        items.put("a1", new TaskItem("a1", "e", null, null, "a", "1", TaskItem.NO_DUE));
+        items.put("a1x", new TaskItem("a1x", "e", "Task a1x", "", "a1", "1", 0));
+        items.put("b", new TaskItem("b", "e", "\ud83d\ude00", null, null, "2", TaskItem.NO_DUE));
+        return TaskTreeBuilder.build(items);
+    }
+
+    private static String dump(List<Task> tasks) {
+        StringBuilder builder = new StringBuilder();
+        for (Task task : tasks) {
+            builder.append(task.depth).append(task.id).append(':').append(task.title).append(':').append(task.notes)
+                    .append(':').append(task.due).append('(').append(dump(task.subTasks)).append(')');
+        }
+        return builder.toString();
+    }
+
+    // snapshot files are written on the engine, wait until every thread is free to run something,
+    // so the writes queued before have finished
+    private static void awaitWrites() throws InterruptedException {
+        final CountDownLatch free = new CountDownLatch(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            TaskEngine.get().execute(TaskEngine.Lane.SYNC, new Runnable() {
+                @Override
+                public void run() {
+                    free.countDown();
+                    try {
+                        free.await(TIMEOUT_S, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        assertTrue(free.await(TIMEOUT_S, TimeUnit.SECONDS));
+    }
+
+    // drops the cached snapshot so the next read is from the file, like after the process restarts
+    private static void dropCache() {
+        TaskSnapshotStore.trim(Collections.<String>emptySet());
+    }
+
+    private File getFile() {
+        File[] files = context.getFilesDir().listFiles();
+        assertNotNull(files);
+        for (File file : files) {
+            if (file.getName().startsWith("tasks_snapshot_")) return file;
+        }
+        throw new AssertionError("No snapshot file");
+    }
+
+    @Test
+    public void readsBackWhatWasWritten() throws InterruptedException {
+        List<Task> tasks = tree();
+        TaskSnapshotStore.writeAsync(context, LIST_ID, "List", tasks);
+        // the cached snapshot is replaced straight away
+        assertSame(tasks, TaskSnapshotStore.read(context, LIST_ID).tasks);
+
+        awaitWrites();
+        dropCache();
+        TaskSnapshotStore.Snapshot snapshot = TaskSnapshotStore.read(context, LIST_ID);
+        assertNotSame(tasks, snapshot.tasks);
+        assertEquals(dump(tasks), dump(snapshot.tasks));
+        assertEquals(LIST_ID, snapshot.listId);
+        assertEquals("List", snapshot.listTitle);
+        // and cached from then on
+        assertSame(snapshot, TaskSnapshotStore.read(context, LIST_ID));
+
+        TaskSnapshotStore.writeAsync(context, LIST_ID, null, Collections.<Task>emptyList());
+        awaitWrites();
+        dropCache();
+        snapshot = TaskSnapshotStore.read(context, LIST_ID);
+        assertNull(snapshot.listTitle);
+        assertTrue(snapshot.tasks.isEmpty());
+        assertNull(TaskSnapshotStore.read(context, "other"));
+    }
+
+    @Test
+    public void ignoresOtherVersions() throws InterruptedException, IOException {
+        TaskSnapshotStore.writeAsync(context, LIST_ID, "List", tree());
+        awaitWrites();
+        dropCache();
+
+        // written by an older or newer version of the app
+        try (RandomAccessFile file = new RandomAccessFile(getFile(), "rw")) {
+            int version = file.readInt();
+            file.seek(0);
+            file.writeInt(version + 1);
+        }
+        assertNull(TaskSnapshotStore.read(context, LIST_ID));
+    }
+
+    @Test
+    public void sharesIndexOfCachedTasks() {
+        List<Task> tasks = tree();
+        TaskSnapshotStore.writeAsync(context, LIST_ID, "List", tasks);
+        TaskSnapshotStore.Snapshot snapshot = TaskSnapshotStore.read(context, LIST_ID);
+        assertSame(snapshot.getIndex(), TaskSnapshotStore.getIndex(LIST_ID, tasks));
+        assertNotSame(snapshot.getIndex(), TaskSnapshotStore.getIndex(LIST_ID, tree()));
+
+        Object index = snapshot.getIndex();
+        TaskSnapshotStore.trimIndexes();
+        assertNotSame(index, snapshot.getIndex());
+    }
+
+    @Test
+    public void deletesEverything() throws InterruptedException {
+        TaskSnapshotStore.writeAsync(context, LIST_ID, "List", tree());
+        awaitWrites();
+        TaskSnapshotStore.deleteAll(context);
+        assertNull(TaskSnapshotStore.read(context, LIST_ID));
+    }
+}
@@ -0,0 +1,80 @@
+package com.mrbbot.taskification.benchmark;
+
+import com.mrbbot.taskification.core.TaskItem;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// generates lists shaped like real ones: mostly top level tasks, some nested, about half with a
+// due date and a third with notes, in the arbitrary order the API returns them
+final class SyntheticTasks {
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+    private static final DateTimeFormatter RFC_3339 = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+
+    private SyntheticTasks() {
+    }
+
+    static Map<String, TaskItem> generate(int size, long seed) {
+        Random random = new Random(seed);
+        long today = System.currentTimeMillis() / DAY_MS * DAY_MS;
+
+        List<TaskItem> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String parent = null;
+            // a quarter of tasks are sub tasks of an earlier task, which may itself be a sub task
+            if (i > 0 && random.nextInt(4) == 0) {
+                parent = items.get(random.nextInt(i)).id;
+            }
+            long due = random.nextBoolean() ? today + (random.nextInt(30) - 5) * DAY_MS : TaskItem.NO_DUE;
+            String notes = random.nextInt(3) == 0 ? "Notes for task " + i : null;
+            items.add(new TaskItem(
+                    "task" + i,
+                    "etag" + i,
+                    "Task number " + i,
+                    notes,
+                    parent,
+                    String.format("%020d", random.nextInt(Integer.MAX_VALUE)),
+                    due
+            ));
+        }
+        Collections.shuffle(items, random);
+
+        Map<String, TaskItem> map = new LinkedHashMap<>();
+        for (TaskItem item : items) {
+            map.put(item.id, item);
+        }
+        return map;
+    }
+
+    // a tasks.list response body for the items, with the extra fields the API sends for each task
+    static byte[] toResponse(Map<String, TaskItem> items) {
+        StringBuilder json = new StringBuilder("{\"kind\":\"tasks#tasks\",\"etag\":\"\\\"list\\\"\",\"items\":[");
+        boolean first = true;
+        for (TaskItem item : items.values()) {
+            if (!first) json.append(',');
+            first = false;
+            json.append("{\"kind\":\"tasks#task\",\"id\":\"").append(item.id)
+                    .append("\",\"etag\":\"").append(item.etag)
+                    .append("\",\"title\":\"").append(item.title)
+                    .append("\",\"updated\":\"2020-04-12T10:00:00.000Z\"")
+                    .append(",\"selfLink\":\"https://www.googleapis.com/tasks/v1/lists/list/tasks/").append(item.id).append('"');
+            if (item.parent != null) json.append(",\"parent\":\"").append(item.parent).append('"');
+            json.append(",\"position\":\"").append(item.position).append('"');
+            if (item.notes != null) json.append(",\"notes\":\"").append(item.notes).append('"');
+            json.append(",\"status\":\"needsAction\"");
+            if (item.hasDue()) json.append(",\"due\":\"").append(RFC_3339.format(Instant.ofEpochMilli(item.due))).append('"');
+            json.append(",\"links\":[]}");
+        }
+        json.append("]}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
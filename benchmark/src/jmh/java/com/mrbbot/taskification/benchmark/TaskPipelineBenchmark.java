@@ -0,0 +1,127 @@
+package com.mrbbot.taskification.benchmark;
+
+import com.mrbbot.taskification.core.DueDateLabeller;
+import com.mrbbot.taskification.core.Task;
+import com.mrbbot.taskification.core.TaskFormatter;
+import com.mrbbot.taskification.core.TaskIndex;
+import com.mrbbot.taskification.core.TaskItem;
+import com.mrbbot.taskification.core.TaskLineRenderer;
+import com.mrbbot.taskification.core.TaskQuery;
+import com.mrbbot.taskification.core.TaskTree;
+import com.mrbbot.taskification.core.TaskTreeBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// covers each stage run on every sync after the response has been parsed
+@State(Scope.Benchmark)
+public class TaskPipelineBenchmark {
+    @Param({"10", "1000", "50000"})
+    public int size;
+
+    private Map<String, TaskItem> items;
+    private List<Task> tasks;
+    private DueDateLabeller labeller;
+    private TaskTree tree;
+    private TaskIndex index;
+    private TaskItem[] edits;
+    private int edit;
+    private final TaskLineRenderer renderer = new TaskLineRenderer(6, 100, 400, 120);
+
+    @Setup
+    public void setUp() {
+        items = SyntheticTasks.generate(size, 42);
+        tasks = TaskTreeBuilder.build(items);
+        labeller = new DueDateLabeller(LocalDate.now());
+        index = TaskIndex.build(tasks);
+        tree = new TaskTree();
+        for (TaskItem item : items.values()) {
+            tree.put(item);
+        }
+        tree.snapshot();
+        // alternating versions of each task, so every put is a change
+        edits = new TaskItem[items.size() * 2];
+        int i = 0;
+        for (TaskItem item : items.values()) {
+            edits[i++] = new TaskItem(item.id, item.etag + "a", item.title + " edited", item.notes, item.parent, item.position, item.due);
+            edits[i++] = item;
+        }
+    }
+
+    @Benchmark
+    public List<TaskItem> sortByPosition() {
+        List<TaskItem> sorted = new ArrayList<>(items.values());
+        Collections.sort(sorted, TaskTreeBuilder.POSITION_COMPARATOR);
+        return sorted;
+    }
+
+    @Benchmark
+    public List<Task> buildTree() {
+        return TaskTreeBuilder.build(items);
+    }
+
+    // a poll where a single task changed, the rest of the tree is reused
+    @Benchmark
+    public List<Task> updateOneTask() {
+        tree.put(edits[edit]);
+        edit = (edit + 1) % edits.length;
+        return tree.snapshot();
+    }
+
+    @Benchmark
+    public TaskIndex buildIndex() {
+        return TaskIndex.build(tasks);
+    }
+
+    // the queries run on every render while a view is chosen
+    @Benchmark
+    public List<Task> queryDueSoon() {
+        return index.query(new TaskQuery(3, null, false, TaskQuery.Sort.DUE_DATE), labeller.getToday());
+    }
+
+    @Benchmark
+    public List<Task> queryText() {
+        return index.query(new TaskQuery(TaskQuery.ANY_DUE, "notes", false, TaskQuery.Sort.POSITION), labeller.getToday());
+    }
+
+    @Benchmark
+    public void labelDueDates(Blackhole blackhole) {
+        for (TaskItem item : items.values()) {
+            if (item.hasDue()) {
+                blackhole.consume(labeller.label(item.due));
+            }
+        }
+    }
+
+    @Benchmark
+    public void formatLines(Blackhole blackhole) {
+        formatLines(tasks, blackhole);
+    }
+
+    private void formatLines(List<Task> tasks, Blackhole blackhole) {
+        for (Task task : tasks) {
+            blackhole.consume(TaskFormatter.format(task, labeller));
+            formatLines(task.subTasks, blackhole);
+        }
+    }
+
+    @Benchmark
+    public void buildAndFormat(Blackhole blackhole) {
+        formatLines(TaskTreeBuilder.build(items), blackhole);
+    }
+
+    @Benchmark
+    public TaskLineRenderer.Result renderVisibleLines() {
+        return renderer.render(tasks, labeller);
+    }
+}
@@ -0,0 +1,43 @@
+package com.mrbbot.taskification.benchmark;
+
+import com.mrbbot.taskification.core.TaskItem;
+import com.mrbbot.taskification.core.TasksPageReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+// decoding a response body into task items, run with the gc profiler to see allocation per poll
+@State(Scope.Benchmark)
+public class TasksPageReaderBenchmark {
+    @Param({"10", "100", "1000"})
+    public int size;
+
+    private byte[] response;
+
+    @Setup
+    public void setUp() {
+        response = SyntheticTasks.toResponse(SyntheticTasks.generate(size, 42));
+    }
+
+    @Benchmark
+    public TasksPageReader.Page read(final Blackhole blackhole) throws IOException {
+        return TasksPageReader.read(new ByteArrayInputStream(response), new TasksPageReader.Callback() {
+            @Override
+            public void onTask(TaskItem item) {
+                blackhole.consume(item);
+            }
+
+            @Override
+            public void onTaskRemoved(String id) {
+                blackhole.consume(id);
+            }
+        });
+    }
+}
@@ -0,0 +1,47 @@
+package com.mrbbot.taskification.core;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+
+// labels due dates relative to a given day, create a new one when the day changes. labels are
+// cached per due day, so each distinct day is only formatted once until the day rolls over
+public final class DueDateLabeller {
+    private static final DateTimeFormatter TASK_LOCAL_DATE = DateTimeFormatter.ofPattern("E dd MMM");
+    private static final long DAY_MS = 86400000L;
+
+    private final LocalDate today;
+    private final long tomorrow;
+    private final long afterTomorrow;
+    // map mapping epoch day to that day's label
+    private final Map<Long, String> labels = new HashMap<>();
+
+    // today should be the date in the device's time zone
+    public DueDateLabeller(LocalDate today) {
+        this.today = today;
+        this.tomorrow = today.toEpochDay() + 1;
+        this.afterTomorrow = today.toEpochDay() + 2;
+    }
+
+    public LocalDate getToday() {
+        return today;
+    }
+
+    public String label(long due) {
+        // due dates have no time, they're sent as midnight UTC on the due day, so the UTC date is
+        // the due date wherever the device is
+        long day = Math.floorDiv(due, DAY_MS);
+        if (day < tomorrow) {
+            return "Today";
+        } else if (day < afterTomorrow) {
+            return "Tomorrow";
+        }
+        String label = labels.get(day);
+        if (label == null) {
+            label = LocalDate.ofEpochDay(day).format(TASK_LOCAL_DATE);
+            labels.put(day, label);
+        }
+        return label;
+    }
+}
@@ -0,0 +1,215 @@
+package com.mrbbot.taskification.core;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.util.StreamingContent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+
+// runs the API client's requests on OkHttp, which keeps connections alive between polls, multiplexes
+// batch and page requests over HTTP/2, and caches responses on disk, revalidating them with their
+// ETag or Last-Modified so unchanged responses come back as a 304 without a body
+public class OkHttpTransport extends HttpTransport {
+    private static final long CACHE_SIZE_BYTES = 5 * 1024 * 1024;
+
+    // polls back off to at most every 15 minutes when nothing changes, see SyncScheduler. keep idle
+    // connections around for longer than that so each poll doesn't need a new TLS handshake
+    private static final int MAX_IDLE_CONNECTIONS = 2;
+    private static final long KEEP_ALIVE_MINUTES = 16;
+
+    private final OkHttpClient client;
+
+    public OkHttpTransport(OkHttpClient client) {
+        this.client = client;
+    }
+
+    public static OkHttpTransport create(File cacheDirectory) {
+        return new OkHttpTransport(new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .cache(new Cache(cacheDirectory, CACHE_SIZE_BYTES))
+                .eventListener(METRICS_LISTENER)
+                .build());
+    }
+
+    // counts the body bytes actually sent and received over the network, so responses served from
+    // the cache count as nothing
+    private static final EventListener METRICS_LISTENER = new EventListener() {
+        @Override
+        public void requestBodyEnd(Call call, long byteCount) {
+            SyncMetrics.recordHttpBytes(byteCount, 0);
+        }
+
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            SyncMetrics.recordHttpBytes(0, byteCount);
+        }
+    };
+
+    // removes every cached response, called on sign out
+    public void clearCache() throws IOException {
+        Cache cache = client.cache();
+        if (cache != null) cache.evictAll();
+    }
+
+    // closes idle connections to free their buffers, the next request opens a new one
+    public void evictConnections() {
+        client.connectionPool().evictAll();
+    }
+
+    @Override
+    public boolean supportsMethod(String method) {
+        return true;
+    }
+
+    @Override
+    protected LowLevelHttpRequest buildRequest(String method, String url) {
+        return new OkHttpRequest(client, method, url);
+    }
+
+    // OkHttp rejects requests that have a body when their method can't, or that don't when it must
+    static boolean permitsRequestBody(String method) {
+        return !method.equals("GET") && !method.equals("HEAD");
+    }
+
+    static boolean requiresRequestBody(String method) {
+        return method.equals("POST") || method.equals("PUT") || method.equals("PATCH")
+                || method.equals("PROPPATCH") || method.equals("REPORT");
+    }
+
+    private static class OkHttpRequest extends LowLevelHttpRequest {
+        private OkHttpClient client;
+        private final String method;
+        private final Request.Builder builder;
+
+        OkHttpRequest(OkHttpClient client, String method, String url) {
+            this.client = client;
+            this.method = method;
+            this.builder = new Request.Builder().url(url);
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            // leave compression to OkHttp, it only decompresses responses transparently if it
+            // added the header itself
+            if ("Accept-Encoding".equalsIgnoreCase(name)) return;
+            builder.addHeader(name, value);
+        }
+
+        @Override
+        public void setTimeout(int connectTimeout, int readTimeout) {
+            // derived clients share the original's connection pool and cache
+            if (client.connectTimeoutMillis() == connectTimeout && client.readTimeoutMillis() == readTimeout) return;
+            client = client.newBuilder()
+                    .connectTimeout(connectTimeout, TimeUnit.MILLISECONDS)
+                    .readTimeout(readTimeout, TimeUnit.MILLISECONDS)
+                    .build();
+        }
+
+        @Override
+        public LowLevelHttpResponse execute() throws IOException {
+            RequestBody body = null;
+            StreamingContent content = getStreamingContent();
+            if (content != null && permitsRequestBody(method)) {
+                Buffer buffer = new Buffer();
+                content.writeTo(buffer.outputStream());
+                String contentType = getContentType();
+                body = RequestBody.create(contentType == null ? null : MediaType.parse(contentType), buffer.readByteString());
+                if (getContentEncoding() != null) {
+                    builder.header("Content-Encoding", getContentEncoding());
+                }
+            } else if (requiresRequestBody(method)) {
+                body = RequestBody.create(null, new byte[0]);
+            }
+            builder.method(method, body);
+            // measured up to the response headers, reading the body is counted as parsing
+            long start = SyncMetrics.start();
+            Response response = client.newCall(builder.build()).execute();
+            SyncMetrics.record(SyncMetrics.Stage.HTTP, start);
+            SyncMetrics.recordHttpRequest();
+            return new OkHttpResponse(response);
+        }
+    }
+
+    private static class OkHttpResponse extends LowLevelHttpResponse {
+        private final Response response;
+
+        OkHttpResponse(Response response) {
+            this.response = response;
+        }
+
+        @Override
+        public InputStream getContent() {
+            ResponseBody body = response.body();
+            return body == null ? null : body.byteStream();
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return response.header("Content-Encoding");
+        }
+
+        @Override
+        public long getContentLength() {
+            ResponseBody body = response.body();
+            return body == null ? -1 : body.contentLength();
+        }
+
+        @Override
+        public String getContentType() {
+            return response.header("Content-Type");
+        }
+
+        @Override
+        public String getStatusLine() {
+            String statusLine = response.protocol().toString().toUpperCase() + " " + response.code();
+            return response.message().isEmpty() ? statusLine : statusLine + " " + response.message();
+        }
+
+        @Override
+        public int getStatusCode() {
+            return response.code();
+        }
+
+        @Override
+        public String getReasonPhrase() {
+            // HTTP/2 responses have no reason phrase
+            return response.message().isEmpty() ? null : response.message();
+        }
+
+        @Override
+        public int getHeaderCount() {
+            return response.headers().size();
+        }
+
+        @Override
+        public String getHeaderName(int index) {
+            return response.headers().name(index);
+        }
+
+        @Override
+        public String getHeaderValue(int index) {
+            return response.headers().value(index);
+        }
+
+        @Override
+        public void disconnect() {
+            response.close();
+        }
+    }
+}
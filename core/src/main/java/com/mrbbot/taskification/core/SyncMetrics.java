@@ -0,0 +1,217 @@
+package com.mrbbot.taskification.core;
+
+import com.google.api.client.http.HttpResponseException;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+// timings and counters for each stage of a sync, kept in fixed size histograms, ring buffers and
+// tables allocated up front so recording never allocates, shown by dumpsys, the debug panel and
+// the load harness
+public final class SyncMetrics {
+    public enum Stage {
+        TOKEN("Token"),
+        HTTP("HTTP"),
+        PARSE("Parse"),
+        TREE_BUILD("Tree build"),
+        RENDER("Render");
+
+        final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+    }
+
+    // buckets are powers of two in microseconds, from under 1us up to 2^25us (about 33s) and over
+    private static final int BUCKETS = 27;
+    private static final int RECENT_SYNCS = 16;
+    private static final int ERROR_KINDS = 16;
+    private static final int NO_STATUS = -1;
+
+    private static class Histogram {
+        final long[] buckets = new long[BUCKETS];
+        long count;
+        long totalMicros;
+        long maxMicros;
+
+        void record(long micros) {
+            int bucket = micros <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            buckets[bucket]++;
+            count++;
+            totalMicros += micros;
+            maxMicros = Math.max(maxMicros, micros);
+        }
+
+        // upper bound of the bucket containing the percentile
+        long percentileMicros(double percentile) {
+            long target = (long) Math.ceil(count * percentile);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= target) return i == 0 ? 0 : Math.min(maxMicros, 1L << i);
+            }
+            return maxMicros;
+        }
+    }
+
+    private static final Histogram[] HISTOGRAMS = new Histogram[Stage.values().length];
+
+    static {
+        for (int i = 0; i < HISTOGRAMS.length; i++) {
+            HISTOGRAMS[i] = new Histogram();
+        }
+    }
+
+    private static long httpRequests;
+    private static long httpBytesSent;
+    private static long httpBytesReceived;
+    private static long tasksParsed;
+
+    // ring buffer of the most recent syncs
+    private static final long[] syncStartedAt = new long[RECENT_SYNCS];
+    private static final long[] syncDurationMicros = new long[RECENT_SYNCS];
+    private static final long[] syncBytes = new long[RECENT_SYNCS];
+    private static final int[] syncTasks = new int[RECENT_SYNCS];
+    private static final byte[] syncOutcome = new byte[RECENT_SYNCS];
+    private static int syncCount;
+    private static final byte OUTCOME_UNCHANGED = 0;
+    private static final byte OUTCOME_CHANGED = 1;
+    private static final byte OUTCOME_FAILED = 2;
+
+    // state of the sync in progress, syncs never overlap
+    private static long currentSyncStartedAt;
+    private static long currentSyncBytes;
+    private static int currentSyncTasks;
+
+    // errors counted by exception class and HTTP status code, in the order they first happened.
+    // errors of kinds that don't fit are counted together
+    private static final Class<?>[] errorTypes = new Class<?>[ERROR_KINDS];
+    private static final int[] errorStatusCodes = new int[ERROR_KINDS];
+    private static final long[] errorCounts = new long[ERROR_KINDS];
+    private static int errorKinds;
+    private static long otherErrors;
+
+    private SyncMetrics() {
+    }
+
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    public static synchronized void record(Stage stage, long startNanos) {
+        HISTOGRAMS[stage.ordinal()].record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+    }
+
+    public static synchronized void recordHttpRequest() {
+        httpRequests++;
+    }
+
+    public static synchronized void recordHttpBytes(long sent, long received) {
+        httpBytesSent += sent;
+        httpBytesReceived += received;
+        currentSyncBytes += sent + received;
+    }
+
+    public static synchronized void recordTasksParsed(int count) {
+        tasksParsed += count;
+        currentSyncTasks += count;
+    }
+
+    public static void recordError(Throwable e) {
+        recordError(e.getClass(), e instanceof HttpResponseException ? ((HttpResponseException) e).getStatusCode() : NO_STATUS);
+    }
+
+    // for errors reported without an exception, like failed parts of a batch, so callers don't
+    // have to create one just to record it
+    public static void recordHttpError(int statusCode) {
+        recordError(HttpResponseException.class, statusCode);
+    }
+
+    private static synchronized void recordError(Class<?> type, int statusCode) {
+        for (int i = 0; i < errorKinds; i++) {
+            if (errorTypes[i] == type && errorStatusCodes[i] == statusCode) {
+                errorCounts[i]++;
+                return;
+            }
+        }
+        if (errorKinds < ERROR_KINDS) {
+            errorTypes[errorKinds] = type;
+            errorStatusCodes[errorKinds] = statusCode;
+            errorCounts[errorKinds] = 1;
+            errorKinds++;
+        } else {
+            otherErrors++;
+        }
+    }
+
+    public static synchronized void onSyncStarted() {
+        currentSyncStartedAt = System.nanoTime();
+        currentSyncBytes = 0;
+        currentSyncTasks = 0;
+    }
+
+    public static synchronized long getHttpBytes() {
+        return httpBytesSent + httpBytesReceived;
+    }
+
+    public static synchronized void onSyncFinished(boolean changed, boolean failed) {
+        int index = syncCount % RECENT_SYNCS;
+        syncStartedAt[index] = System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - currentSyncStartedAt);
+        syncDurationMicros[index] = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - currentSyncStartedAt);
+        syncBytes[index] = currentSyncBytes;
+        syncTasks[index] = currentSyncTasks;
+        syncOutcome[index] = failed ? OUTCOME_FAILED : changed ? OUTCOME_CHANGED : OUTCOME_UNCHANGED;
+        syncCount++;
+    }
+
+    public static synchronized void dump(PrintWriter writer) {
+        writer.println("Sync metrics:");
+        writer.println("  Stage         count      p50      p90      p99      max     mean");
+        for (Stage stage : Stage.values()) {
+            Histogram histogram = HISTOGRAMS[stage.ordinal()];
+            writer.printf("  %-11s %7d %8s %8s %8s %8s %8s%n",
+                    stage.label,
+                    histogram.count,
+                    formatMicros(histogram.percentileMicros(0.5)),
+                    formatMicros(histogram.percentileMicros(0.9)),
+                    formatMicros(histogram.percentileMicros(0.99)),
+                    formatMicros(histogram.maxMicros),
+                    formatMicros(histogram.count == 0 ? 0 : histogram.totalMicros / histogram.count));
+        }
+        writer.printf("  HTTP requests: %d, sent: %d bytes, received: %d bytes%n", httpRequests, httpBytesSent, httpBytesReceived);
+        writer.printf("  Tasks parsed: %d%n", tasksParsed);
+
+        writer.println("Errors:");
+        if (errorKinds == 0) writer.println("  None");
+        for (int i = 0; i < errorKinds; i++) {
+            String type = errorTypes[i].getSimpleName();
+            if (errorStatusCodes[i] != NO_STATUS) type += " " + errorStatusCodes[i];
+            writer.printf("  %s: %d%n", type, errorCounts[i]);
+        }
+        if (otherErrors > 0) writer.printf("  Other: %d%n", otherErrors);
+
+        writer.println("Recent syncs:");
+        if (syncCount == 0) writer.println("  None");
+        for (int i = Math.max(0, syncCount - RECENT_SYNCS); i < syncCount; i++) {
+            int index = i % RECENT_SYNCS;
+            String outcome = syncOutcome[index] == OUTCOME_FAILED ? "failed" : syncOutcome[index] == OUTCOME_CHANGED ? "changed" : "unchanged";
+            writer.printf("  %tT %8s %9s %8d bytes %6d tasks%n",
+                    syncStartedAt[index], formatMicros(syncDurationMicros[index]), outcome, syncBytes[index], syncTasks[index]);
+        }
+        writer.flush();
+    }
+
+    public static String dump() {
+        StringWriter writer = new StringWriter();
+        dump(new PrintWriter(writer));
+        return writer.toString();
+    }
+
+    private static String formatMicros(long micros) {
+        if (micros < 1000) return micros + "us";
+        if (micros < 1000000) return String.format("%.1fms", micros / 1000.0);
+        return String.format("%.2fs", micros / 1000000.0);
+    }
+}
@@ -0,0 +1,60 @@
+package com.mrbbot.taskification.core;
+
+import java.util.Collections;
+import java.util.List;
+
+public final class Task {
+    public final String id;
+    public final String title;
+    public final String notes;
+    // milliseconds since the epoch, or TaskItem.NO_DUE
+    public final long due;
+    public final int depth;
+    public final List<Task> subTasks;
+    // number of tasks in this task's subtree, including itself
+    public final int treeSize;
+
+    public Task(String id, String title, String notes, long due, int depth, List<Task> subTasks) {
+        this.id = id;
+        this.title = title;
+        this.notes = notes;
+        this.due = due;
+        this.depth = depth;
+        this.subTasks = Collections.unmodifiableList(subTasks);
+        int treeSize = 1;
+        for (Task subTask : subTasks) {
+            treeSize += subTask.treeSize;
+        }
+        this.treeSize = treeSize;
+    }
+
+    public static int treeSize(List<Task> tasks) {
+        int size = 0;
+        for (Task task : tasks) {
+            size += task.treeSize;
+        }
+        return size;
+    }
+
+    public boolean hasDue() {
+        return due != TaskItem.NO_DUE;
+    }
+
+    private String toString(String prefix) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(prefix).append("ID: ").append(id).append("\n");
+        builder.append(prefix).append("  Title: ").append(title).append("\n");
+        builder.append(prefix).append("  Notes: ").append(notes).append("\n");
+        builder.append(prefix).append("  Due: ").append(hasDue() ? String.valueOf(due) : null).append("\n");
+        builder.append(prefix).append("  Sub Tasks: ").append("\n");
+        for (Task task : subTasks) {
+            builder.append(task.toString(prefix + "    "));
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toString("");
+    }
+}
@@ -0,0 +1,72 @@
+package com.mrbbot.taskification.core;
+
+public final class TaskFormatter {
+    private static final String INDENT = "   ";
+
+    // a formatted task line, the due date and notes start at detailStart so they can be styled
+    public static final class Line {
+        public final String text;
+        // index of the due date and notes in text, or -1 if there are none
+        public final int detailStart;
+
+        Line(String text, int detailStart) {
+            this.text = text;
+            this.detailStart = detailStart;
+        }
+    }
+
+    private TaskFormatter() {
+    }
+
+    public static Line format(Task task, DueDateLabeller labeller) {
+        return format(task, labeller, Integer.MAX_VALUE);
+    }
+
+    // formats a task, truncating it with an ellipsis if it would be longer than maxLength, long
+    // notes are never copied in full
+    public static Line format(Task task, DueDateLabeller labeller, int maxLength) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < task.depth; i++) {
+            builder.append(INDENT);
+        }
+        builder.append("- ");
+        append(builder, task.title, maxLength);
+
+        boolean hasDue = task.hasDue();
+        boolean hasNotes = task.notes != null;
+        if (!hasDue && !hasNotes || builder.length() >= maxLength) {
+            return new Line(truncate(builder, maxLength), -1);
+        }
+
+        builder.append(": ");
+        int detailStart = builder.length();
+        if (hasDue) builder.append(labeller.label(task.due));
+        if (hasDue && hasNotes) builder.append(", ");
+        if (hasNotes) append(builder, task.notes, maxLength);
+        String text = truncate(builder, maxLength);
+        // the details may have been cut off entirely
+        return new Line(text, detailStart < text.length() ? detailStart : -1);
+    }
+
+    private static void append(StringBuilder builder, String value, int maxLength) {
+        if (value == null) {
+            builder.append((String) null);
+            return;
+        }
+        // one extra character so truncate knows to add the ellipsis
+        int remaining = Math.max(0, maxLength - builder.length() + 1);
+        builder.append(value, 0, Math.min(value.length(), remaining));
+    }
+
+    // cuts the text to maxLength characters ending with an ellipsis, without leaving half of a
+    // surrogate pair before it
+    static String truncate(StringBuilder builder, int maxLength) {
+        if (builder.length() > maxLength) {
+            int end = Math.max(0, maxLength - 1);
+            if (end > 0 && Character.isHighSurrogate(builder.charAt(end - 1))) end--;
+            builder.setLength(end);
+            builder.append('\u2026');
+        }
+        return builder.toString();
+    }
+}
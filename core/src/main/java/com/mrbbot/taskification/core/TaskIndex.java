@@ -0,0 +1,283 @@
+package com.mrbbot.taskification.core;
+
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+// indexes a tree of tasks for filtered views, built once per tree and queried on every render.
+// tasks are numbered in the order they're shown, depth first, and matches are returned as a flat
+// list without sub tasks. the index isn't thread safe
+public final class TaskIndex {
+    private static final long DAY_MS = 86400000L;
+
+    private final List<Task> tasks;
+    // every task depth first, indexed by its number
+    private final Task[] order;
+    // due day in the high 32 bits and task number in the low ones, sorted, so tasks are ordered by
+    // due date then position and a due date range is a contiguous run. tasks without a due date
+    // aren't included
+    private final long[] dueKeys;
+    // map mapping lower case word to the numbers of the tasks containing it, in ascending order
+    private final Map<String, int[]> postings;
+    // flat copies of tasks, created the first time each one is returned
+    private final Task[] flat;
+
+    private TaskIndex(List<Task> tasks, Task[] order, long[] dueKeys, Map<String, int[]> postings) {
+        this.tasks = tasks;
+        this.order = order;
+        this.dueKeys = dueKeys;
+        this.postings = postings;
+        this.flat = new Task[order.length];
+    }
+
+    public static TaskIndex build(List<Task> tasks) {
+        Task[] order = new Task[Task.treeSize(tasks)];
+        flatten(tasks, order, 0);
+
+        int dueCount = 0;
+        for (Task task : order) {
+            if (task.hasDue()) dueCount++;
+        }
+        long[] dueKeys = new long[dueCount];
+        Map<String, IntList> words = new HashMap<>();
+        Set<String> taskWords = new HashSet<>();
+        for (int i = 0, d = 0; i < order.length; i++) {
+            Task task = order[i];
+            if (task.hasDue()) {
+                dueKeys[d++] = (Math.floorDiv(task.due, DAY_MS) << 32) | i;
+            }
+            taskWords.clear();
+            tokenize(task.title, taskWords);
+            tokenize(task.notes, taskWords);
+            for (String word : taskWords) {
+                IntList list = words.get(word);
+                if (list == null) {
+                    list = new IntList();
+                    words.put(word, list);
+                }
+                list.add(i);
+            }
+        }
+        Arrays.sort(dueKeys);
+
+        Map<String, int[]> postings = new HashMap<>(words.size() * 4 / 3 + 1);
+        for (Map.Entry<String, IntList> entry : words.entrySet()) {
+            postings.put(entry.getKey(), entry.getValue().toArray());
+        }
+        return new TaskIndex(tasks, order, dueKeys, postings);
+    }
+
+    private static int flatten(List<Task> tasks, Task[] order, int next) {
+        for (Task task : tasks) {
+            order[next++] = task;
+            next = flatten(task.subTasks, order, next);
+        }
+        return next;
+    }
+
+    // splits on anything that isn't a letter, digit, @, # or _, so tags like @work are kept whole
+    static void tokenize(String text, Set<String> words) {
+        if (text == null) return;
+        text = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && isWordChar(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '@' || c == '#' || c == '_';
+    }
+
+    public int size() {
+        return order.length;
+    }
+
+    // today should be the date in the device's time zone, due dates are compared by day like
+    // DueDateLabeller does
+    public List<Task> query(TaskQuery query, LocalDate today) {
+        if (query.isAll()) return tasks;
+
+        // the tasks matching the text filter in position order, or null if there isn't one
+        int[] textMatches = null;
+        if (query.text != null) {
+            Set<String> words = new HashSet<>();
+            tokenize(query.text, words);
+            for (String word : words) {
+                int[] wordMatches = postings.get(word);
+                if (wordMatches == null) return Collections.emptyList();
+                textMatches = textMatches == null ? wordMatches : intersect(textMatches, wordMatches);
+            }
+        }
+        // tasks due before this day are included, everything before the day after the last
+        // included day, so overdue tasks are too
+        long endDay = query.dueWithinDays == TaskQuery.ANY_DUE ? Long.MAX_VALUE : today.toEpochDay() + query.dueWithinDays + 1;
+        int dueEnd = endDay == Long.MAX_VALUE ? -1 : lowerBound(dueKeys, endDay << 32);
+
+        int[] matches;
+        int size = 0;
+        if (dueEnd >= 0 && (textMatches == null || dueEnd < textMatches.length)) {
+            // the due date range is the smaller set, it's in due date order
+            BitSet textFilter = null;
+            if (textMatches != null) {
+                textFilter = new BitSet(order.length);
+                for (int i : textMatches) {
+                    textFilter.set(i);
+                }
+            }
+            matches = new int[dueEnd];
+            for (int k = 0; k < dueEnd; k++) {
+                int i = (int) dueKeys[k];
+                if ((textFilter == null || textFilter.get(i)) && (!query.topLevelOnly || order[i].depth == 0)) {
+                    matches[size++] = i;
+                }
+            }
+            if (query.sort == TaskQuery.Sort.POSITION) {
+                Arrays.sort(matches, 0, size);
+            }
+        } else if (textMatches != null) {
+            // the text matches are the smaller set, they're in position order
+            matches = new int[textMatches.length];
+            for (int i : textMatches) {
+                Task task = order[i];
+                if (dueEnd >= 0 && (!task.hasDue() || Math.floorDiv(task.due, DAY_MS) >= endDay)) continue;
+                if (query.topLevelOnly && task.depth != 0) continue;
+                matches[size++] = i;
+            }
+            if (query.sort == TaskQuery.Sort.DUE_DATE) {
+                sortByDue(matches, size);
+            }
+        } else if (query.sort == TaskQuery.Sort.DUE_DATE) {
+            // tasks with a due date first, then those without in position order
+            matches = new int[order.length];
+            for (long key : dueKeys) {
+                int i = (int) key;
+                if (!query.topLevelOnly || order[i].depth == 0) matches[size++] = i;
+            }
+            for (int i = 0; i < order.length; i++) {
+                if (!order[i].hasDue() && (!query.topLevelOnly || order[i].depth == 0)) matches[size++] = i;
+            }
+        } else {
+            matches = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                if (!query.topLevelOnly || order[i].depth == 0) matches[size++] = i;
+            }
+        }
+        return new Result(matches, size);
+    }
+
+    // orders tasks in position order by due date, keeping those without one last
+    private void sortByDue(int[] matches, int size) {
+        long[] keys = new long[size];
+        int dueCount = 0;
+        for (int k = 0; k < size; k++) {
+            Task task = order[matches[k]];
+            if (task.hasDue()) keys[dueCount++] = (Math.floorDiv(task.due, DAY_MS) << 32) | matches[k];
+        }
+        Arrays.sort(keys, 0, dueCount);
+        int noDue = dueCount;
+        for (int k = 0; k < size; k++) {
+            if (!order[matches[k]].hasDue()) keys[noDue++] = matches[k];
+        }
+        for (int k = 0; k < size; k++) {
+            matches[k] = (int) keys[k];
+        }
+    }
+
+    // matching tasks by number, flattened as they're read so only the ones shown are copied
+    private final class Result extends AbstractList<Task> implements RandomAccess {
+        private final int[] matches;
+        private final int size;
+
+        Result(int[] matches, int size) {
+            this.matches = matches;
+            this.size = size;
+        }
+
+        @Override
+        public Task get(int index) {
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException(String.valueOf(index));
+            return flat(matches[index]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    private Task flat(int i) {
+        Task task = flat[i];
+        if (task == null) {
+            Task original = order[i];
+            task = original.depth == 0 && original.subTasks.isEmpty()
+                    ? original
+                    : new Task(original.id, original.title, original.notes, original.due, 0, Collections.<Task>emptyList());
+            flat[i] = task;
+        }
+        return task;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int size = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    // index of the first key not less than the given one
+    private static int lowerBound(long[] keys, long key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.mrbbot.taskification.core;
+
+// a single task as returned by the API, with only the fields needed to build and display the tree
+public final class TaskItem {
+    public static final long NO_DUE = Long.MIN_VALUE;
+
+    public final String id;
+    public final String etag;
+    public final String title;
+    public final String notes;
+    public final String parent;
+    public final String position;
+    // milliseconds since the epoch, or NO_DUE
+    public final long due;
+
+    public TaskItem(String id, String etag, String title, String notes, String parent, String position, long due) {
+        this.id = id;
+        this.etag = etag;
+        this.title = title;
+        this.notes = notes;
+        this.parent = parent;
+        this.position = position;
+        this.due = due;
+    }
+
+    public boolean hasDue() {
+        return due != NO_DUE;
+    }
+}
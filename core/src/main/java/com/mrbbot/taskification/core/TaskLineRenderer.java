@@ -0,0 +1,88 @@
+package com.mrbbot.taskification.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// renders only as many lines as will be shown, ending with a summary of the tasks left out
+public final class TaskLineRenderer {
+    public static final class Result {
+        public final List<TaskFormatter.Line> lines;
+        // comma separated top level task titles for the collapsed notification
+        public final String summary;
+        public final int hiddenTasks;
+
+        Result(List<TaskFormatter.Line> lines, String summary, int hiddenTasks) {
+            this.lines = Collections.unmodifiableList(lines);
+            this.summary = summary;
+            this.hiddenTasks = hiddenTasks;
+        }
+
+        public boolean isEmpty() {
+            return lines.isEmpty();
+        }
+
+        // hash of everything shown, used to skip re-posting unchanged notifications
+        public int fingerprint() {
+            int hash = summary.hashCode();
+            for (TaskFormatter.Line line : lines) {
+                hash = 31 * hash + line.text.hashCode();
+                hash = 31 * hash + line.detailStart;
+            }
+            return hash;
+        }
+    }
+
+    private final int maxLines;
+    private final int maxLineChars;
+    private final int maxChars;
+    private final int maxSummaryChars;
+
+    // maxLines includes the "+N more" line, maxChars is shared between all task lines
+    public TaskLineRenderer(int maxLines, int maxLineChars, int maxChars, int maxSummaryChars) {
+        this.maxLines = maxLines;
+        this.maxLineChars = maxLineChars;
+        this.maxChars = maxChars;
+        this.maxSummaryChars = maxSummaryChars;
+    }
+
+    public Result render(List<Task> tasks, DueDateLabeller labeller) {
+        int total = Task.treeSize(tasks);
+        // only leave room for the "+N more" line if some tasks won't fit
+        int taskLines = total <= maxLines ? total : maxLines - 1;
+
+        List<TaskFormatter.Line> lines = new ArrayList<>(Math.min(total, maxLines));
+        render(tasks, labeller, lines, taskLines, 0);
+        int hiddenTasks = total - lines.size();
+        if (hiddenTasks > 0) {
+            lines.add(new TaskFormatter.Line("+" + hiddenTasks + " more", 0));
+        }
+        return new Result(lines, summarise(tasks), hiddenTasks);
+    }
+
+    // renders tasks depth first until either budget runs out, returning the characters used
+    private int render(List<Task> tasks, DueDateLabeller labeller, List<TaskFormatter.Line> lines, int taskLines, int chars) {
+        for (Task task : tasks) {
+            if (lines.size() >= taskLines || chars >= maxChars) return chars;
+            TaskFormatter.Line line = TaskFormatter.format(task, labeller, Math.min(maxLineChars, maxChars - chars));
+            lines.add(line);
+            chars += line.text.length();
+            chars = render(task.subTasks, labeller, lines, taskLines, chars);
+        }
+        return chars;
+    }
+
+    private String summarise(List<Task> tasks) {
+        StringBuilder summary = new StringBuilder();
+        for (Task task : tasks) {
+            if (summary.length() > 0) {
+                summary.append(", ");
+            }
+            summary.append(task.title);
+            // only stop once over the limit, so the ellipsis shows tasks were left out even if the
+            // ones before them fill it exactly
+            if (summary.length() > maxSummaryChars) break;
+        }
+        return TaskFormatter.truncate(summary, maxSummaryChars);
+    }
+}
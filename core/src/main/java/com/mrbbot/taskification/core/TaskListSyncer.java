@@ -0,0 +1,439 @@
+package com.mrbbot.taskification.core;
+
+import com.google.api.client.googleapis.batch.BatchCallback;
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.HttpStatusCodes;
+import com.google.api.client.http.HttpUnsuccessfulResponseHandler;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.tasks.model.TaskList;
+import com.google.api.services.tasks.model.TaskLists;
+import com.google.api.services.tasks.model.Tasks;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// keeps every list's tasks up to date with full and then delta syncs, fetching the pages of a
+// tasks.list response, parsing them, merging them and building the tree. free of Android so the
+// same code runs in the app and the load harness
+public final class TaskListSyncer {
+    // checked between pages, so a cancelled sync stops without leaving a list half merged
+    public interface Cancellation {
+        boolean isCancelled();
+    }
+
+    public static final Cancellation NEVER_CANCELLED = new Cancellation() {
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    // the first delta after a full sync is requested from slightly before it to allow for clock
+    // skew between the device and the server, re-delivered tasks are ignored if their etag matches
+    private static final long SYNC_SKEW_MARGIN_MS = TimeUnit.MINUTES.toMillis(5);
+
+    // the API's maximum page size, and only the fields needed to merge and display tasks
+    private static final long TASKS_PAGE_SIZE = 100;
+    private static final String TASKS_FIELDS = "etag,nextPageToken,items(id,etag,title,notes,due,parent,position,status,deleted,hidden,updated)";
+    public static final String TASK_LISTS_FIELDS = "items(id,title)";
+
+    // the global batch endpoint has been turned off, batches have to go to the API's own endpoint
+    private static final String TASKS_BATCH_PATH = "batch/tasks/v1";
+
+    public static final class BatchResult {
+        // null if the task lists couldn't be fetched
+        public List<TaskList> taskLists;
+        public final Map<String, List<Task>> tasks = new HashMap<>();
+        public final Map<String, IOException> errors = new HashMap<>();
+    }
+
+    private static class ListSyncState {
+        final ReentrantLock lock = new ReentrantLock();
+        // all visible tasks in the list, merged from full and delta syncs
+        final TaskTree tree = new TaskTree();
+        DateTime updatedMin;
+        String etag;
+        // whether a full sync has finished, after which only changes are fetched
+        boolean synced;
+    }
+
+    private final Cancellation cancellation;
+    // map mapping list ID to the incremental sync state for that list
+    private final Map<String, ListSyncState> syncStates = new HashMap<>();
+
+    public TaskListSyncer(Cancellation cancellation) {
+        this.cancellation = cancellation;
+    }
+
+    public static BatchRequest newBatch(com.google.api.services.tasks.Tasks service) {
+        BatchRequest batch = service.batch();
+        batch.setBatchUrl(new GenericUrl(service.getRootUrl() + TASKS_BATCH_PATH));
+        return batch;
+    }
+
+    public void clear() {
+        synchronized (syncStates) {
+            syncStates.clear();
+        }
+    }
+
+    // drops the state of every other list, e.g. lists that are no longer selected, their next sync
+    // is a full one. the kept lists' trees share their tasks with what's being shown, so dropping
+    // them would free little. a list being synced is left alone rather than waiting for it
+    public void trim(Collection<String> keepListIds) {
+        synchronized (syncStates) {
+            for (Iterator<Map.Entry<String, ListSyncState>> it = syncStates.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, ListSyncState> entry = it.next();
+                if (keepListIds.contains(entry.getKey())) continue;
+                ListSyncState state = entry.getValue();
+                if (!state.lock.tryLock()) continue;
+                try {
+                    it.remove();
+                } finally {
+                    state.lock.unlock();
+                }
+            }
+        }
+    }
+
+    // makes the next sync of the list a full one, for when the cached tasks can't be trusted
+    public void reset(String listId) {
+        ListSyncState state = getSyncState(listId);
+        state.lock.lock();
+        try {
+            state.synced = false;
+        } finally {
+            state.lock.unlock();
+        }
+    }
+
+    private ListSyncState getSyncState(String listId) {
+        synchronized (syncStates) {
+            ListSyncState state = syncStates.get(listId);
+            if (state == null) {
+                state = new ListSyncState();
+                syncStates.put(listId, state);
+            }
+            return state;
+        }
+    }
+
+    private static boolean isVisible(com.google.api.services.tasks.model.Task item) {
+        return !Boolean.TRUE.equals(item.getDeleted())
+                && !Boolean.TRUE.equals(item.getHidden())
+                && !"completed".equals(item.getStatus());
+    }
+
+    // a single sync of a list, which may be spread over several pages of requests
+    private class ListSync implements TasksPageReader.Callback {
+        final String listId;
+        final ListSyncState state;
+        // tasks completed locally that the API may not know about yet
+        final Set<String> excludedIds;
+        final DateTime syncTime;
+        final boolean delta;
+
+        boolean changed;
+        int parsed;
+        boolean firstPage = true;
+        String firstEtag;
+        String pageToken;
+        // the server's time for the most recent change on any page
+        long latestUpdated = TasksPageReader.NO_UPDATED;
+        // the status of a batched first page that wasn't a success, and whether it was a 304
+        int batchStatusCode;
+        boolean notModified;
+
+        // the state's lock must be held for the whole sync
+        ListSync(String listId, ListSyncState state, Set<String> excludedIds) {
+            this.listId = listId;
+            this.state = state;
+            this.excludedIds = excludedIds;
+            this.syncTime = new DateTime(System.currentTimeMillis() - SYNC_SKEW_MARGIN_MS);
+            this.delta = state.synced;
+            if (!delta) {
+                // drop anything left over from a full sync that failed part way through
+                state.tree.clear();
+            }
+            this.changed = !delta;
+        }
+
+        // get a page of tasks, or only the tasks changed since the last sync if we have them
+        com.google.api.services.tasks.Tasks.TasksOperations.List newRequest(com.google.api.services.tasks.Tasks service) throws IOException {
+            com.google.api.services.tasks.Tasks.TasksOperations.List request = service
+                    .tasks()
+                    .list(listId)
+                    .setMaxResults(TASKS_PAGE_SIZE)
+                    .setFields(TASKS_FIELDS)
+                    .setPageToken(pageToken);
+            if (delta) {
+                // deleted, hidden and completed tasks are needed so they can be removed
+                request.setUpdatedMin(state.updatedMin.toStringRfc3339())
+                        .setShowCompleted(true)
+                        .setShowDeleted(true)
+                        .setShowHidden(true);
+                if (firstPage && state.etag != null) {
+                    request.getRequestHeaders().setIfNoneMatch(state.etag);
+                }
+            } else {
+                request.setShowCompleted(false)
+                        .setShowDeleted(false)
+                        .setShowHidden(false);
+            }
+            return request;
+        }
+
+        boolean isNotModified(int statusCode) {
+            return delta && firstPage && statusCode == HttpStatusCodes.STATUS_CODE_NOT_MODIFIED;
+        }
+
+        // the first page as part of a batch. a 304 part has no body, so errors aren't parsed and
+        // the status is taken from the part's response instead
+        void queueFirstPage(com.google.api.services.tasks.Tasks service, BatchRequest batch, final BatchResult result) throws IOException {
+            HttpRequest request = newRequest(service).buildHttpRequest();
+            // the credential's handler, which retries the part after refreshing an expired token
+            final HttpUnsuccessfulResponseHandler handler = request.getUnsuccessfulResponseHandler();
+            request.setUnsuccessfulResponseHandler(new HttpUnsuccessfulResponseHandler() {
+                @Override
+                public boolean handleResponse(HttpRequest request, HttpResponse response, boolean supportsRetry) throws IOException {
+                    batchStatusCode = response.getStatusCode();
+                    return handler != null && handler.handleResponse(request, response, supportsRetry);
+                }
+            });
+            batch.queue(request, Tasks.class, Void.class, new BatchCallback<Tasks, Void>() {
+                @Override
+                public void onSuccess(Tasks tasksRes, HttpHeaders responseHeaders) {
+                    onPage(tasksRes);
+                }
+
+                @Override
+                public void onFailure(Void e, HttpHeaders responseHeaders) {
+                    if (isNotModified(batchStatusCode)) {
+                        notModified = true;
+                        return;
+                    }
+                    result.errors.put(listId, new IOException("HTTP " + batchStatusCode));
+                    SyncMetrics.recordHttpError(batchStatusCode);
+                }
+            });
+        }
+
+        // merge each task as it arrives so a page's response is never held in full
+        @Override
+        public void onTask(TaskItem item) {
+            if (excludedIds.contains(item.id)) {
+                onTaskRemoved(item.id);
+                return;
+            }
+            parsed++;
+            if (state.tree.put(item)) {
+                changed = true;
+            }
+        }
+
+        @Override
+        public void onTaskRemoved(String id) {
+            parsed++;
+            if (state.tree.remove(id)) {
+                changed = true;
+            }
+        }
+
+        void onPage(String etag, String nextPageToken, long pageLatestUpdated) {
+            latestUpdated = Math.max(latestUpdated, pageLatestUpdated);
+            if (firstPage) {
+                firstEtag = etag;
+                firstPage = false;
+            }
+            pageToken = nextPageToken;
+        }
+
+        // pages parsed by the API client, only used for the first page of a batch
+        void onPage(Tasks tasksRes) {
+            long pageLatestUpdated = TasksPageReader.NO_UPDATED;
+            if (tasksRes.getItems() != null) {
+                SyncMetrics.recordTasksParsed(tasksRes.getItems().size());
+                for (com.google.api.services.tasks.model.Task item : tasksRes.getItems()) {
+                    if (item.getUpdated() != null) {
+                        pageLatestUpdated = Math.max(pageLatestUpdated, item.getUpdated().getValue());
+                    }
+                    if (isVisible(item)) {
+                        onTask(toTaskItem(item));
+                    } else {
+                        onTaskRemoved(item.getId());
+                    }
+                }
+            }
+            onPage(tasksRes.getEtag(), tasksRes.getNextPageToken(), pageLatestUpdated);
+        }
+
+        boolean hasMorePages() {
+            return firstPage || pageToken != null;
+        }
+
+        void fetchRemainingPages(com.google.api.services.tasks.Tasks service) throws IOException {
+            while (hasMorePages()) {
+                // stop between pages if the sync has been cancelled, what's been merged so far is
+                // kept but the sync window isn't moved forward
+                if (!firstPage && cancellation.isCancelled()) {
+                    throw new InterruptedIOException("Sync of " + listId + " cancelled");
+                }
+                // the response is streamed straight into task items rather than parsed into models
+                HttpResponse response = newRequest(service).executeUnparsed();
+                try {
+                    long start = SyncMetrics.start();
+                    parsed = 0;
+                    TasksPageReader.Page page = TasksPageReader.read(response.getContent(), this);
+                    SyncMetrics.record(SyncMetrics.Stage.PARSE, start);
+                    SyncMetrics.recordTasksParsed(parsed);
+                    onPage(page.etag, page.nextPageToken, page.latestUpdated);
+                } finally {
+                    response.disconnect();
+                }
+            }
+        }
+
+        // a delta moves the window up to its newest change, which is on the server's clock so
+        // needs no skew margin. the next delta then only re-delivers the tasks changed at that
+        // instant, rather than everything changed within the margin. a full sync's newest change
+        // may be long ago, so it falls back to the device's clock
+        private DateTime getNextUpdatedMin() {
+            if (!delta || latestUpdated == TasksPageReader.NO_UPDATED) return syncTime;
+            return new DateTime(Math.max(latestUpdated, state.updatedMin.getValue()));
+        }
+
+        List<Task> finish() {
+            if (changed) {
+                // only move the window forward when something changed, so unchanged polls send
+                // identical requests and the etag can be used to get a 304 without a body
+                state.updatedMin = getNextUpdatedMin();
+                state.etag = delta ? null : firstEtag;
+                state.synced = true;
+            } else if (firstEtag != null) {
+                // the next poll sends the same request, so this response's etag is the one it
+                // can be answered with a 304 for, even if an earlier unchanged response's wasn't
+                state.etag = firstEtag;
+            }
+            return getTaskTree(state);
+        }
+    }
+
+    // the list's tasks, without the excluded ones, the same tree is returned while nothing changes
+    public List<Task> sync(com.google.api.services.tasks.Tasks service, String listId, Set<String> excludedIds) throws IOException {
+        ListSyncState state = getSyncState(listId);
+        state.lock.lock();
+        try {
+            ListSync sync = new ListSync(listId, state, excludedIds);
+            try {
+                sync.fetchRemainingPages(service);
+            } catch (HttpResponseException e) {
+                if (sync.isNotModified(e.getStatusCode())) {
+                    return getTaskTree(state);
+                }
+                throw e;
+            }
+            return sync.finish();
+        } finally {
+            state.lock.unlock();
+        }
+    }
+
+    // gets the task lists and the first page of each list's tasks in a single batch request,
+    // any further pages are fetched afterwards
+    public BatchResult syncAll(com.google.api.services.tasks.Tasks service, Collection<String> listIds, Map<String, Set<String>> excludedIds) throws IOException {
+        final BatchResult result = new BatchResult();
+
+        // locks are always taken in list ID order so concurrent batches can't deadlock
+        List<String> sortedListIds = new ArrayList<>(new TreeSet<>(listIds));
+        List<ListSyncState> states = new ArrayList<>();
+        for (String listId : sortedListIds) {
+            ListSyncState state = getSyncState(listId);
+            state.lock.lock();
+            states.add(state);
+        }
+        try {
+            BatchRequest batch = newBatch(service);
+            service.tasklists().list().setFields(TASK_LISTS_FIELDS).queue(batch, new JsonBatchCallback<TaskLists>() {
+                @Override
+                public void onSuccess(TaskLists listsRes, HttpHeaders responseHeaders) {
+                    List<TaskList> items = listsRes.getItems();
+                    result.taskLists = items == null ? Collections.<TaskList>emptyList() : items;
+                }
+
+                @Override
+                public void onFailure(GoogleJsonError e, HttpHeaders responseHeaders) {
+                    SyncMetrics.recordHttpError(e.getCode());
+                }
+            });
+
+            final List<ListSync> syncs = new ArrayList<>();
+            for (int i = 0; i < sortedListIds.size(); i++) {
+                String listId = sortedListIds.get(i);
+                Set<String> excluded = excludedIds.get(listId);
+                ListSync sync = new ListSync(listId, states.get(i), excluded == null ? Collections.<String>emptySet() : excluded);
+                syncs.add(sync);
+                sync.queueFirstPage(service, batch, result);
+            }
+            batch.execute();
+
+            for (ListSync sync : syncs) {
+                if (result.errors.containsKey(sync.listId)) continue;
+                if (sync.notModified) {
+                    result.tasks.put(sync.listId, getTaskTree(sync.state));
+                    continue;
+                }
+                try {
+                    sync.fetchRemainingPages(service);
+                    result.tasks.put(sync.listId, sync.finish());
+                } catch (IOException e) {
+                    result.errors.put(sync.listId, e);
+                    SyncMetrics.recordError(e);
+                }
+            }
+            return result;
+        } finally {
+            for (ListSyncState state : states) {
+                state.lock.unlock();
+            }
+        }
+    }
+
+    private static TaskItem toTaskItem(com.google.api.services.tasks.model.Task item) {
+        return new TaskItem(
+                item.getId(),
+                item.getEtag(),
+                item.getTitle(),
+                item.getNotes(),
+                item.getParent(),
+                item.getPosition(),
+                item.getDue() == null ? TaskItem.NO_DUE : item.getDue().getValue()
+        );
+    }
+
+    // only the changed tasks and their ancestors are rebuilt, everything else is shared with the
+    // previous tree, which is returned as is if nothing changed
+    private static List<Task> getTaskTree(ListSyncState state) {
+        long start = SyncMetrics.start();
+        List<Task> tasks = state.tree.snapshot();
+        SyncMetrics.record(SyncMetrics.Stage.TREE_BUILD, start);
+        return tasks;
+    }
+}
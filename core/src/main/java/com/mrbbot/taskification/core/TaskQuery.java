@@ -0,0 +1,49 @@
+package com.mrbbot.taskification.core;
+
+import java.util.Objects;
+
+// which tasks to show and in what order, answered locally from a TaskIndex
+public final class TaskQuery {
+    public enum Sort {
+        POSITION,
+        DUE_DATE
+    }
+
+    public static final int ANY_DUE = -1;
+    public static final TaskQuery ALL = new TaskQuery(ANY_DUE, null, false, Sort.POSITION);
+
+    // overdue tasks and those due up to this many days after today, or ANY_DUE to not filter
+    public final int dueWithinDays;
+    // words that must all appear in a task's title or notes, or null to not filter
+    public final String text;
+    public final boolean topLevelOnly;
+    public final Sort sort;
+
+    public TaskQuery(int dueWithinDays, String text, boolean topLevelOnly, Sort sort) {
+        this.dueWithinDays = dueWithinDays;
+        this.text = text == null || text.trim().isEmpty() ? null : text.trim();
+        this.topLevelOnly = topLevelOnly;
+        this.sort = sort;
+    }
+
+    // the whole tree in position order, which is shown as is rather than queried
+    public boolean isAll() {
+        return dueWithinDays == ANY_DUE && text == null && !topLevelOnly && sort == Sort.POSITION;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TaskQuery)) return false;
+        TaskQuery query = (TaskQuery) o;
+        return dueWithinDays == query.dueWithinDays
+                && topLevelOnly == query.topLevelOnly
+                && Objects.equals(text, query.text)
+                && sort == query.sort;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(dueWithinDays, text, topLevelOnly, sort);
+    }
+}
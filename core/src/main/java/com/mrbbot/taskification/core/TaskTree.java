@@ -0,0 +1,190 @@
+package com.mrbbot.taskification.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// a list's tasks, kept indexed so each snapshot only rebuilds the tasks that changed and the path
+// from each of them to the top level. every other Task is shared with the previous snapshot, and
+// the previous snapshot itself is returned if nothing changed. snapshots are immutable, the tree
+// itself isn't thread safe
+public final class TaskTree {
+    // all visible tasks in the list, by ID
+    private final Map<String, TaskItem> items = new HashMap<>();
+    // map mapping parent task ID to its sub tasks in position order, top level tasks are under null
+    private final Map<String, List<TaskItem>> children = new HashMap<>();
+    // IDs of missing tasks that still have sub tasks, those sub tasks are shown at the top level
+    private final Set<String> missingParents = new HashSet<>();
+    // the node built for each task in the current snapshot
+    private final Map<String, Task> nodes = new HashMap<>();
+    // tasks whose node has to be rebuilt, either because they changed or a sub task did
+    private final Set<String> dirty = new HashSet<>();
+    private boolean rootsDirty = true;
+    private List<Task> snapshot = Collections.emptyList();
+    private long version;
+
+    public int size() {
+        return items.size();
+    }
+
+    public TaskItem get(String id) {
+        return items.get(id);
+    }
+
+    // incremented every time a snapshot differs from the previous one
+    public long getVersion() {
+        return version;
+    }
+
+    public void clear() {
+        items.clear();
+        children.clear();
+        missingParents.clear();
+        nodes.clear();
+        dirty.clear();
+        rootsDirty = true;
+    }
+
+    // adds or replaces a task, returning false if the same version was already in the tree
+    public boolean put(TaskItem item) {
+        TaskItem previous = items.get(item.id);
+        if (previous != null && equals(previous.etag, item.etag)) {
+            return false;
+        }
+        items.put(item.id, item);
+        if (previous == null) {
+            // any sub tasks that were shown at the top level move under this task
+            if (missingParents.remove(item.id)) {
+                rootsDirty = true;
+            }
+            addChild(item);
+        } else if (!equals(previous.parent, item.parent) || !equals(previous.position, item.position)) {
+            removeChild(previous);
+            addChild(item);
+        } else {
+            replaceChild(previous, item);
+        }
+        markDirty(item.id);
+        return true;
+    }
+
+    // returns false if the task wasn't in the tree
+    public boolean remove(String id) {
+        TaskItem previous = items.remove(id);
+        if (previous == null) return false;
+        removeChild(previous);
+        nodes.remove(id);
+        dirty.remove(id);
+        // its sub tasks are shown at the top level until it comes back
+        if (children.containsKey(id)) {
+            missingParents.add(id);
+            rootsDirty = true;
+        }
+        return true;
+    }
+
+    // the current tree, the same list is returned until something changes
+    public List<Task> snapshot() {
+        if (!rootsDirty && dirty.isEmpty()) return snapshot;
+
+        List<TaskItem> roots = children.get(null);
+        if (!missingParents.isEmpty()) {
+            roots = roots == null ? new ArrayList<TaskItem>() : new ArrayList<>(roots);
+            for (String parent : missingParents) {
+                roots.addAll(children.get(parent));
+            }
+            Collections.sort(roots, TaskTreeBuilder.POSITION_COMPARATOR);
+        }
+        snapshot = Collections.unmodifiableList(build(roots, 0));
+        dirty.clear();
+        rootsDirty = false;
+        version++;
+        return snapshot;
+    }
+
+    private List<Task> build(List<TaskItem> siblings, int depth) {
+        if (siblings == null) return Collections.emptyList();
+        List<Task> tasks = new ArrayList<>(siblings.size());
+        for (TaskItem item : siblings) {
+            tasks.add(build(item, depth));
+        }
+        return tasks;
+    }
+
+    private Task build(TaskItem item, int depth) {
+        Task node = nodes.get(item.id);
+        // a task that moved to a different depth is rebuilt along with its sub tasks
+        if (node != null && node.depth == depth && !dirty.contains(item.id)) {
+            return node;
+        }
+        node = new Task(item.id, item.title, item.notes, item.due, depth, build(children.get(item.id), depth + 1));
+        nodes.put(item.id, node);
+        return node;
+    }
+
+    // marks the task and its ancestors for rebuilding, up to the top level
+    private void markDirty(String id) {
+        while (id != null) {
+            TaskItem item = items.get(id);
+            // a missing parent's sub tasks are at the top level
+            if (item == null) break;
+            // already marked, and so are its ancestors
+            if (!dirty.add(id)) return;
+            id = item.parent;
+        }
+        rootsDirty = true;
+    }
+
+    private void addChild(TaskItem item) {
+        List<TaskItem> siblings = children.get(item.parent);
+        if (siblings == null) {
+            siblings = new ArrayList<>();
+            children.put(item.parent, siblings);
+            if (item.parent != null && !items.containsKey(item.parent)) {
+                missingParents.add(item.parent);
+            }
+        }
+        int index = Collections.binarySearch(siblings, item, TaskTreeBuilder.POSITION_COMPARATOR);
+        siblings.add(index < 0 ? -index - 1 : index, item);
+        markDirty(item.parent);
+    }
+
+    private void removeChild(TaskItem item) {
+        List<TaskItem> siblings = children.get(item.parent);
+        if (siblings == null) return;
+        int index = indexOf(siblings, item);
+        if (index >= 0) siblings.remove(index);
+        if (siblings.isEmpty()) {
+            children.remove(item.parent);
+            missingParents.remove(item.parent);
+        }
+        markDirty(item.parent);
+    }
+
+    private void replaceChild(TaskItem previous, TaskItem item) {
+        List<TaskItem> siblings = children.get(previous.parent);
+        siblings.set(indexOf(siblings, previous), item);
+    }
+
+    // siblings are sorted by position, so only those with the same position need checking
+    private static int indexOf(List<TaskItem> siblings, TaskItem item) {
+        int index = Collections.binarySearch(siblings, item, TaskTreeBuilder.POSITION_COMPARATOR);
+        if (index < 0) return -1;
+        int start = index;
+        while (start > 0 && TaskTreeBuilder.POSITION_COMPARATOR.compare(siblings.get(start - 1), item) == 0) {
+            start--;
+        }
+        for (int i = start; i < siblings.size() && TaskTreeBuilder.POSITION_COMPARATOR.compare(siblings.get(i), item) == 0; i++) {
+            if (siblings.get(i).id.equals(item.id)) return i;
+        }
+        return -1;
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,111 @@
+package com.mrbbot.taskification.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public final class TaskTreeBuilder {
+    // positions are zero padded strings, so they sort correctly as strings
+    public static final Comparator<TaskItem> POSITION_COMPARATOR = new Comparator<TaskItem>() {
+        @Override
+        public int compare(TaskItem a, TaskItem b) {
+            String aPosition = a.position == null ? "" : a.position;
+            String bPosition = b.position == null ? "" : b.position;
+            return aPosition.compareTo(bPosition);
+        }
+    };
+
+    private TaskTreeBuilder() {
+    }
+
+    // builds an immutable tree from tasks in any order, nested to any depth, tasks whose parent
+    // is missing are shown at the top level
+    public static List<Task> build(Map<String, TaskItem> items) {
+        // map mapping parent task ID to its sub tasks, top level tasks are under null
+        Map<String, List<TaskItem>> children = new HashMap<>();
+        for (TaskItem item : items.values()) {
+            String parent = item.parent;
+            if (parent != null && !items.containsKey(parent)) {
+                parent = null;
+            }
+            List<TaskItem> siblings = children.get(parent);
+            if (siblings == null) {
+                siblings = new ArrayList<>();
+                children.put(parent, siblings);
+            }
+            siblings.add(item);
+        }
+        return build(children, null, 0);
+    }
+
+    private static List<Task> build(Map<String, List<TaskItem>> children, String parent, int depth) {
+        List<TaskItem> siblings = children.remove(parent);
+        if (siblings == null) return Collections.emptyList();
+
+        // siblings only need ordering amongst themselves
+        Collections.sort(siblings, POSITION_COMPARATOR);
+        List<Task> tasks = new ArrayList<>(siblings.size());
+        for (TaskItem item : siblings) {
+            tasks.add(new Task(
+                    item.id,
+                    item.title,
+                    item.notes,
+                    item.due,
+                    depth,
+                    build(children, item.id, depth + 1)
+            ));
+        }
+        return Collections.unmodifiableList(tasks);
+    }
+
+    // removes the tasks with the given IDs from a built tree, returning the same tree if none of
+    // them are in it. their sub tasks move to the top level, like tasks whose parent is missing
+    public static List<Task> without(List<Task> tasks, Set<String> ids) {
+        if (ids.isEmpty()) return tasks;
+        List<Task> result = new ArrayList<>(tasks.size());
+        boolean changed = false;
+        for (Task task : tasks) {
+            List<Task> promoted = new ArrayList<>();
+            Task kept = without(task, ids, promoted);
+            if (kept != task) changed = true;
+            if (kept != null) result.add(kept);
+            result.addAll(promoted);
+        }
+        return changed ? Collections.unmodifiableList(result) : tasks;
+    }
+
+    private static Task without(Task task, Set<String> ids, List<Task> promoted) {
+        if (ids.contains(task.id)) {
+            for (Task subTask : task.subTasks) {
+                Task kept = without(subTask, ids, promoted);
+                if (kept != null) promoted.add(withDepth(kept, 0));
+            }
+            return null;
+        }
+        // only copy the sub tasks once one of them has changed
+        List<Task> subTasks = null;
+        for (int i = 0; i < task.subTasks.size(); i++) {
+            Task subTask = task.subTasks.get(i);
+            Task kept = without(subTask, ids, promoted);
+            if (kept != subTask && subTasks == null) {
+                subTasks = new ArrayList<>(task.subTasks.subList(0, i));
+            }
+            if (subTasks != null && kept != null) subTasks.add(kept);
+        }
+        if (subTasks == null) return task;
+        return new Task(task.id, task.title, task.notes, task.due, task.depth, subTasks);
+    }
+
+    private static Task withDepth(Task task, int depth) {
+        if (task.depth == depth) return task;
+        List<Task> subTasks = new ArrayList<>(task.subTasks.size());
+        for (Task subTask : task.subTasks) {
+            subTasks.add(withDepth(subTask, depth + 1));
+        }
+        return new Task(task.id, task.title, task.notes, task.due, depth, subTasks);
+    }
+}
@@ -0,0 +1,213 @@
+package com.mrbbot.taskification.core;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+
+// decodes a page of a tasks.list response token by token, straight into TaskItems, without
+// building the API client's map backed models
+public final class TasksPageReader {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final long DAY_MS = 86400000L;
+    public static final long NO_UPDATED = Long.MIN_VALUE;
+
+    public interface Callback {
+        void onTask(TaskItem item);
+
+        // called for tasks that have been deleted, hidden or completed
+        void onTaskRemoved(String id);
+    }
+
+    public static final class Page {
+        public final String etag;
+        public final String nextPageToken;
+        // when the most recently changed task on the page was changed, or NO_UPDATED
+        public final long latestUpdated;
+
+        Page(String etag, String nextPageToken, long latestUpdated) {
+            this.etag = etag;
+            this.nextPageToken = nextPageToken;
+            this.latestUpdated = latestUpdated;
+        }
+    }
+
+    private TasksPageReader() {
+    }
+
+    public static Page read(InputStream in, Callback callback) throws IOException {
+        String etag = null;
+        String nextPageToken = null;
+        long latestUpdated = NO_UPDATED;
+        try (JsonParser parser = JSON_FACTORY.createParser(in)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("etag".equals(field)) {
+                    etag = parser.getText();
+                } else if ("nextPageToken".equals(field)) {
+                    nextPageToken = parser.getText();
+                } else if ("items".equals(field) && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        latestUpdated = Math.max(latestUpdated, readTask(parser, callback));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new Page(etag, nextPageToken, latestUpdated);
+    }
+
+    // returns when the task was last changed, or NO_UPDATED
+    private static long readTask(JsonParser parser, Callback callback) throws IOException {
+        String id = null;
+        String etag = null;
+        String title = null;
+        String notes = null;
+        String parent = null;
+        String position = null;
+        long due = TaskItem.NO_DUE;
+        long updated = NO_UPDATED;
+        boolean removed = false;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "id":
+                    id = parser.getText();
+                    break;
+                case "etag":
+                    etag = parser.getText();
+                    break;
+                case "title":
+                    title = parser.getText();
+                    break;
+                case "notes":
+                    notes = parser.getText();
+                    break;
+                case "parent":
+                    parent = parser.getText();
+                    break;
+                case "position":
+                    position = parser.getText();
+                    break;
+                case "due":
+                    due = readDateTime(parser);
+                    break;
+                case "updated":
+                    updated = readDateTime(parser);
+                    break;
+                case "status":
+                    removed |= "completed".equals(parser.getText());
+                    break;
+                case "deleted":
+                case "hidden":
+                    removed |= parser.getValueAsBoolean();
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+        if (id == null) return updated;
+
+        if (removed) {
+            callback.onTaskRemoved(id);
+        } else {
+            callback.onTask(new TaskItem(id, etag, title, notes, parent, position, due));
+        }
+        return updated;
+    }
+
+    // a malformed timestamp fails the page like any other malformed response
+    private static long readDateTime(JsonParser parser) throws IOException {
+        try {
+            return parseDateTime(parser.getText());
+        } catch (NumberFormatException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Expected " + expected + " but got " + actual);
+        }
+    }
+
+    // parses RFC 3339 timestamps as sent by the API, e.g. 2020-04-12T00:00:00.000Z, without any
+    // intermediate objects for the common UTC case. anything else goes through the full parser,
+    // malformed values throw a NumberFormatException like DateTime.parseRfc3339
+    static long parseDateTime(String value) {
+        int length = value.length();
+        if (length >= 20 && value.charAt(4) == '-' && value.charAt(7) == '-' && value.charAt(10) == 'T'
+                && value.charAt(13) == ':' && value.charAt(16) == ':' && value.charAt(length - 1) == 'Z') {
+            int year = digits(value, 0, 4);
+            int month = digits(value, 5, 7);
+            int day = digits(value, 8, 10);
+            int hour = digits(value, 11, 13);
+            int minute = digits(value, 14, 16);
+            int second = digits(value, 17, 19);
+            int millis = 0;
+            boolean valid = year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= daysInMonth(year, month)
+                    && hour >= 0 && hour <= 23 && minute >= 0 && minute <= 59 && second >= 0 && second <= 59;
+            if (length > 20) {
+                // a fraction of any length, only the first three digits are significant
+                int fractionDigits = length - 21;
+                valid &= value.charAt(19) == '.' && fractionDigits > 0;
+                int fraction = digits(value, 20, 20 + Math.min(3, fractionDigits));
+                valid &= fraction >= 0 && (fractionDigits <= 3 || digits(value, 23, length - 1) >= 0);
+                millis = fraction;
+                for (int i = fractionDigits; i < 3; i++) {
+                    millis *= 10;
+                }
+            }
+            if (valid) {
+                return epochDay(year, month, day) * DAY_MS + ((hour * 60L + minute) * 60L + second) * 1000L + millis;
+            }
+        }
+        try {
+            if (length == 10) {
+                // date only, as midnight UTC
+                return LocalDate.parse(value).toEpochDay() * DAY_MS;
+            }
+            return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new NumberFormatException("Invalid date/time: " + value);
+        }
+    }
+
+    // the decimal value of the characters between start and end, or -1 if any isn't a digit
+    private static int digits(String value, int start, int end) {
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) return -1;
+            // long fractions only need checking, not their value
+            if (result < 100000000) result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    // days since 1970-01-01 in the proleptic Gregorian calendar
+    private static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,140 @@
+package com.mrbbot.taskification.core;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OkHttpTransportTest {
+    @Rule
+    public TemporaryFolder cacheFolder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private HttpRequestFactory requestFactory;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        requestFactory = OkHttpTransport.create(cacheFolder.getRoot()).createRequestFactory();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    private String get(String path) throws IOException {
+        HttpResponse response = requestFactory.buildGetRequest(new GenericUrl(server.url(path).toString())).execute();
+        try {
+            return response.parseAsString();
+        } finally {
+            response.disconnect();
+        }
+    }
+
+    @Test
+    public void reusesConnections() throws Exception {
+        server.enqueue(new MockResponse().setBody("a"));
+        server.enqueue(new MockResponse().setBody("b"));
+
+        assertEquals("a", get("/a"));
+        assertEquals("b", get("/b"));
+
+        assertEquals(0, server.takeRequest().getSequenceNumber());
+        assertEquals(1, server.takeRequest().getSequenceNumber());
+    }
+
+    @Test
+    public void decompressesGzipTransparently() throws Exception {
+        Buffer gzipped = new Buffer();
+        try (BufferedSink sink = Okio.buffer(new GzipSink(gzipped))) {
+            sink.writeUtf8("{\"items\":[]}");
+        }
+        server.enqueue(new MockResponse().setBody(gzipped).setHeader("Content-Encoding", "gzip"));
+
+        HttpResponse response = requestFactory.buildGetRequest(new GenericUrl(server.url("/").toString())).execute();
+        assertNull(response.getContentEncoding());
+        assertEquals("{\"items\":[]}", response.parseAsString());
+        assertEquals("gzip", server.takeRequest().getHeader("Accept-Encoding"));
+    }
+
+    @Test
+    public void revalidatesCachedResponsesWithEtag() throws Exception {
+        server.enqueue(new MockResponse()
+                .setBody("tasks")
+                .setHeader("ETag", "\"v1\"")
+                .setHeader("Cache-Control", "private, max-age=0, must-revalidate"));
+        server.enqueue(new MockResponse().setResponseCode(304));
+
+        assertEquals("tasks", get("/tasks"));
+        // the 304 is answered from the cache
+        assertEquals("tasks", get("/tasks"));
+
+        assertNull(server.takeRequest().getHeader("If-None-Match"));
+        assertEquals("\"v1\"", server.takeRequest().getHeader("If-None-Match"));
+    }
+
+    @Test
+    public void passesThroughNotModifiedForOwnConditionalRequests() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(304));
+
+        try {
+            com.google.api.client.http.HttpRequest request = requestFactory.buildGetRequest(new GenericUrl(server.url("/tasks").toString()));
+            request.getHeaders().setIfNoneMatch("\"v1\"");
+            request.execute();
+            fail("Expected a 304 to be thrown");
+        } catch (HttpResponseException e) {
+            assertEquals(304, e.getStatusCode());
+        }
+        RecordedRequest recorded = server.takeRequest();
+        assertEquals("\"v1\"", recorded.getHeader("If-None-Match"));
+    }
+
+    @Test
+    public void sendsEmptyBodyOnlyWhenMethodNeedsOne() throws Exception {
+        server.enqueue(new MockResponse());
+        server.enqueue(new MockResponse());
+
+        requestFactory.buildPostRequest(new GenericUrl(server.url("/clear").toString()), null).execute().disconnect();
+        requestFactory.buildDeleteRequest(new GenericUrl(server.url("/task").toString())).execute().disconnect();
+
+        RecordedRequest post = server.takeRequest();
+        assertEquals("POST", post.getMethod());
+        assertEquals(0, post.getBodySize());
+        RecordedRequest delete = server.takeRequest();
+        assertEquals("DELETE", delete.getMethod());
+        assertNull(delete.getHeader("Content-Length"));
+    }
+
+    @Test
+    public void checksMethodsForBodies() {
+        assertTrue(OkHttpTransport.requiresRequestBody("PATCH"));
+        assertFalse(OkHttpTransport.requiresRequestBody("DELETE"));
+        assertTrue(OkHttpTransport.permitsRequestBody("DELETE"));
+        assertFalse(OkHttpTransport.permitsRequestBody("GET"));
+        assertFalse(OkHttpTransport.permitsRequestBody("HEAD"));
+    }
+}
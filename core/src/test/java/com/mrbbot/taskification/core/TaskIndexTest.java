@@ -0,0 +1,148 @@
+package com.mrbbot.taskification.core;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TaskIndexTest {
+    private static final long DAY_MS = 86400000L;
+    private static final LocalDate TODAY = LocalDate.of(2020, 4, 12);
+    private static final String[] WORDS = {"@work", "@home", "buy", "call", "email", "report"};
+
+    // a random tree of tasks, about half due somewhere from 10 days ago to 30 days from now
+    private static List<Task> tree(int count) {
+        Random random = new Random(3);
+        TaskTree tree = new TaskTree();
+        long today = TODAY.toEpochDay();
+        for (int i = 0; i < count; i++) {
+            String parent = i > 0 && random.nextInt(4) == 0 ? "t" + random.nextInt(i) : null;
+            // some due during the day, so due dates are compared by day rather than instant
+            long due = random.nextBoolean() ? (today + random.nextInt(40) - 10) * DAY_MS + random.nextInt(2) * 3600000L : TaskItem.NO_DUE;
+            String title = "Task " + i + " " + WORDS[random.nextInt(WORDS.length)].toUpperCase(Locale.ROOT);
+            String notes = random.nextInt(3) == 0 ? "notes, " + WORDS[random.nextInt(WORDS.length)] : null;
+            tree.put(new TaskItem("t" + i, "e", title, notes, parent, String.format("%08d", random.nextInt(1 << 30)), due));
+        }
+        return tree.snapshot();
+    }
+
+    private static void flatten(List<Task> tasks, List<Task> flat) {
+        for (Task task : tasks) {
+            flat.add(task);
+            flatten(task.subTasks, flat);
+        }
+    }
+
+    private static long day(Task task) {
+        return task.hasDue() ? Math.floorDiv(task.due, DAY_MS) : Long.MAX_VALUE;
+    }
+
+    // the query done the slow way over every task
+    private static List<String> bruteForce(List<Task> tasks, TaskQuery query) {
+        List<Task> flat = new ArrayList<>();
+        flatten(tasks, flat);
+        List<Task> matches = new ArrayList<>();
+        for (Task task : flat) {
+            if (query.dueWithinDays != TaskQuery.ANY_DUE && day(task) > TODAY.toEpochDay() + query.dueWithinDays) continue;
+            if (query.topLevelOnly && task.depth != 0) continue;
+            if (query.text != null) {
+                String text = (task.title + " " + (task.notes == null ? "" : task.notes)).toLowerCase(Locale.ROOT);
+                Set<String> words = new HashSet<>(Arrays.asList(text.split("[^a-z0-9@#_]+")));
+                if (!words.containsAll(Arrays.asList(query.text.toLowerCase(Locale.ROOT).split(" ")))) continue;
+            }
+            matches.add(task);
+        }
+        if (query.sort == TaskQuery.Sort.DUE_DATE) {
+            // a stable sort, so tasks due the same day stay in position order
+            List<Task> sorted = new ArrayList<>(matches);
+            for (int i = 1; i < sorted.size(); i++) {
+                Task task = sorted.get(i);
+                int j = i;
+                while (j > 0 && day(sorted.get(j - 1)) > day(task)) {
+                    sorted.set(j, sorted.get(j - 1));
+                    j--;
+                }
+                sorted.set(j, task);
+            }
+            matches = sorted;
+        }
+        List<String> ids = new ArrayList<>();
+        for (Task task : matches) {
+            ids.add(task.id);
+        }
+        return ids;
+    }
+
+    @Test
+    public void matchesBruteForce() {
+        List<Task> tasks = tree(2000);
+        TaskIndex index = TaskIndex.build(tasks);
+        assertEquals(2000, index.size());
+
+        int[] dueWithin = {TaskQuery.ANY_DUE, 0, 3, 100};
+        String[] texts = {null, "@work", "@WORK buy", "notes @home", "task 42", "missing", "buy buy"};
+        for (int days : dueWithin) {
+            for (String text : texts) {
+                for (boolean topLevelOnly : new boolean[]{false, true}) {
+                    for (TaskQuery.Sort sort : TaskQuery.Sort.values()) {
+                        TaskQuery query = new TaskQuery(days, text, topLevelOnly, sort);
+                        if (query.isAll()) continue;
+                        String name = days + " " + text + " " + topLevelOnly + " " + sort;
+                        List<Task> result = index.query(query, TODAY);
+                        List<String> ids = new ArrayList<>();
+                        for (Task task : result) {
+                            ids.add(task.id);
+                            // results are flat copies
+                            assertEquals(name, 0, task.depth);
+                            assertTrue(name, task.subTasks.isEmpty());
+                        }
+                        assertEquals(name, bruteForce(tasks, query), ids);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void allReturnsTree() {
+        List<Task> tasks = tree(100);
+        assertSame(tasks, TaskIndex.build(tasks).query(TaskQuery.ALL, TODAY));
+    }
+
+    @Test
+    public void copiesSubTasksOnce() {
+        List<Task> tasks = tree(200);
+        TaskIndex index = TaskIndex.build(tasks);
+        TaskQuery query = new TaskQuery(TaskQuery.ANY_DUE, "task", false, TaskQuery.Sort.POSITION);
+        List<Task> first = index.query(query, TODAY);
+        List<Task> second = index.query(query, TODAY);
+        for (int i = 0; i < first.size(); i++) {
+            assertSame(first.get(i), second.get(i));
+        }
+        // top level tasks without sub tasks aren't copied at all
+        for (Task task : tasks) {
+            if (task.subTasks.isEmpty()) {
+                assertSame(task, first.get(bruteForce(tasks, query).indexOf(task.id)));
+            }
+        }
+    }
+
+    @Test
+    public void tokenizeKeepsTags() {
+        Set<String> words = new HashSet<>();
+        TaskIndex.tokenize("Email @Work re: #urgent_fix, 2x!", words);
+        assertEquals(new HashSet<>(Arrays.asList("email", "@work", "re", "#urgent_fix", "2x")), words);
+        TaskIndex.tokenize(null, words);
+        assertEquals(5, words.size());
+    }
+}
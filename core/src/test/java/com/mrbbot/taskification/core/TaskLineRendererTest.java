@@ -0,0 +1,175 @@
+package com.mrbbot.taskification.core;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TaskLineRendererTest {
+    // the limits the notifications are rendered with
+    private static final TaskLineRenderer RENDERER = new TaskLineRenderer(6, 100, 400, 120);
+    private static final DueDateLabeller LABELLER = new DueDateLabeller(LocalDate.of(2020, 4, 12));
+    private static final String ELLIPSIS = "\u2026";
+    private static final String EMOJI = "\ud83d\ude00";
+
+    private static Task task(String title) {
+        return new Task(title, title, null, TaskItem.NO_DUE, 0, Collections.<Task>emptyList());
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    // a task whose line is exactly the given length
+    private static Task line(int length) {
+        return task(repeat('a', length - 2));
+    }
+
+    private static List<Task> tasks(int count, int lineLength) {
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            tasks.add(line(lineLength));
+        }
+        return tasks;
+    }
+
+    private static int chars(TaskLineRenderer.Result result) {
+        int chars = 0;
+        for (TaskFormatter.Line line : result.lines.subList(0, result.lines.size() - (result.hiddenTasks > 0 ? 1 : 0))) {
+            chars += line.text.length();
+        }
+        return chars;
+    }
+
+    private static void assertNoBrokenSurrogates(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isHighSurrogate(c)) {
+                assertTrue(text, i + 1 < text.length() && Character.isLowSurrogate(text.charAt(++i)));
+            } else {
+                assertFalse(text, Character.isLowSurrogate(c));
+            }
+        }
+    }
+
+    @Test
+    public void showsEveryTaskWhenTheyFit() {
+        TaskLineRenderer.Result result = RENDERER.render(tasks(6, 10), LABELLER);
+        assertEquals(6, result.lines.size());
+        assertEquals(0, result.hiddenTasks);
+    }
+
+    @Test
+    public void leavesRoomForMoreLine() {
+        TaskLineRenderer.Result result = RENDERER.render(tasks(7, 10), LABELLER);
+        assertEquals(6, result.lines.size());
+        assertEquals(2, result.hiddenTasks);
+        assertEquals("+2 more", result.lines.get(5).text);
+    }
+
+    @Test
+    public void countsHiddenSubTasks() {
+        Task parent = new Task("p", "p", null, TaskItem.NO_DUE, 0, Arrays.asList(
+                new Task("c1", "c1", null, TaskItem.NO_DUE, 1, Collections.<Task>emptyList()),
+                new Task("c2", "c2", null, TaskItem.NO_DUE, 1, Collections.<Task>emptyList())));
+        List<Task> tasks = new ArrayList<>(tasks(4, 10));
+        tasks.add(parent);
+        TaskLineRenderer.Result result = RENDERER.render(tasks, LABELLER);
+        assertEquals(6, result.lines.size());
+        assertEquals("- p", result.lines.get(4).text);
+        assertEquals("+2 more", result.lines.get(5).text);
+    }
+
+    @Test
+    public void truncatesLinesOverLimit() {
+        TaskLineRenderer.Result result = RENDERER.render(Arrays.asList(line(100), line(101)), LABELLER);
+        assertEquals(line(100).title, result.lines.get(0).text.substring(2));
+        String truncated = result.lines.get(1).text;
+        assertEquals(100, truncated.length());
+        assertTrue(truncated.endsWith(ELLIPSIS));
+        assertTrue(line(101).title.startsWith(truncated.substring(2, 99)));
+    }
+
+    @Test
+    public void sharesCharacterBudgetBetweenLines() {
+        // four full lines use up the budget before the line limit
+        TaskLineRenderer.Result result = RENDERER.render(tasks(6, 100), LABELLER);
+        assertEquals(5, result.lines.size());
+        assertEquals(400, chars(result));
+        assertEquals("+2 more", result.lines.get(4).text);
+
+        // the last line gets what's left of the budget
+        List<Task> tasks = tasks(3, 100);
+        tasks.add(line(50));
+        tasks.add(line(100));
+        result = RENDERER.render(tasks, LABELLER);
+        assertEquals(5, result.lines.size());
+        assertEquals(400, chars(result));
+        assertEquals(50, result.lines.get(4).text.length());
+        assertTrue(result.lines.get(4).text.endsWith(ELLIPSIS));
+        assertEquals(0, result.hiddenTasks);
+    }
+
+    @Test
+    public void keepsSurrogatePairsWhole() {
+        // the pair straddles the last character kept before the ellipsis
+        Task task = task(repeat('a', 96) + EMOJI + "bbb");
+        String text = RENDERER.render(Collections.singletonList(task), LABELLER).lines.get(0).text;
+        assertNoBrokenSurrogates(text);
+        assertEquals("- " + repeat('a', 96) + ELLIPSIS, text);
+
+        // the pair fits exactly
+        task = task(repeat('a', 95) + EMOJI + "bbb");
+        text = RENDERER.render(Collections.singletonList(task), LABELLER).lines.get(0).text;
+        assertEquals("- " + repeat('a', 95) + EMOJI + ELLIPSIS, text);
+
+        // in the notes, after the detail start
+        task = new Task("n", "n", repeat('a', 93) + EMOJI + "bbb", TaskItem.NO_DUE, 0, Collections.<Task>emptyList());
+        TaskFormatter.Line line = RENDERER.render(Collections.singletonList(task), LABELLER).lines.get(0);
+        assertNoBrokenSurrogates(line.text);
+        assertEquals(5, line.detailStart);
+    }
+
+    @Test
+    public void dropsDetailStartWhenDetailsAreCutOff() {
+        Task task = new Task("t", repeat('a', 97), "notes", TaskItem.NO_DUE, 0, Collections.<Task>emptyList());
+        TaskFormatter.Line line = RENDERER.render(Collections.singletonList(task), LABELLER).lines.get(0);
+        assertEquals(100, line.text.length());
+        assertEquals(-1, line.detailStart);
+
+        // due dates are details too, and are labelled
+        task = new Task("t", "t", null, 0, 0, Collections.<Task>emptyList());
+        line = RENDERER.render(Collections.singletonList(task), LABELLER).lines.get(0);
+        assertEquals("- t: Today", line.text);
+        assertEquals(5, line.detailStart);
+    }
+
+    @Test
+    public void truncatesSummary() {
+        // exactly the limit with nothing left out
+        List<Task> tasks = Arrays.asList(task(repeat('a', 58)), task(repeat('b', 60)));
+        assertEquals(120, RENDERER.render(tasks, LABELLER).summary.length());
+        assertFalse(RENDERER.render(tasks, LABELLER).summary.endsWith(ELLIPSIS));
+
+        // exactly the limit, but there are more tasks
+        tasks = Arrays.asList(task(repeat('a', 58)), task(repeat('b', 60)), task("c"));
+        String summary = RENDERER.render(tasks, LABELLER).summary;
+        assertEquals(120, summary.length());
+        assertTrue(summary.endsWith(ELLIPSIS));
+
+        // a pair at the truncation point
+        tasks = Collections.singletonList(task(repeat('a', 118) + EMOJI + "b"));
+        summary = RENDERER.render(tasks, LABELLER).summary;
+        assertNoBrokenSurrogates(summary);
+        assertEquals(repeat('a', 118) + ELLIPSIS, summary);
+    }
+}
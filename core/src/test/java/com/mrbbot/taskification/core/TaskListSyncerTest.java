@@ -0,0 +1,271 @@
+package com.mrbbot.taskification.core;
+
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.tasks.Tasks;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TaskListSyncerTest {
+    private static final String LIST_ID = "list";
+    private static final Set<String> NONE_EXCLUDED = Collections.emptySet();
+    // when tasks are changed after the full sync, on the server's clock
+    private static final String UPDATED = new DateTime(System.currentTimeMillis() + 60000).toStringRfc3339();
+    private static final String UPDATED_LATER = new DateTime(System.currentTimeMillis() + 120000).toStringRfc3339();
+
+    @Rule
+    public TemporaryFolder cacheFolder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private Tasks service;
+    private TaskListSyncer syncer;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        service = new Tasks.Builder(OkHttpTransport.create(cacheFolder.getRoot()), JacksonFactory.getDefaultInstance(), null)
+                .setRootUrl(server.url("/").toString())
+                .setApplicationName("TaskListSyncerTest")
+                .build();
+        syncer = new TaskListSyncer(TaskListSyncer.NEVER_CANCELLED);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    private static String task(String id, String etag, String updated, String extra) {
+        return "{\"id\":\"" + id + "\",\"etag\":\"" + etag + "\",\"title\":\"Task " + id + "\",\"position\":\"" + id
+                + "\",\"updated\":\"" + updated + "\"" + extra + "}";
+    }
+
+    private static String task(String id, String etag, String updated) {
+        return task(id, etag, updated, "");
+    }
+
+    private static String page(String etag, String nextPageToken, String... tasks) {
+        StringBuilder json = new StringBuilder("{\"etag\":\"").append(etag).append("\"");
+        if (nextPageToken != null) json.append(",\"nextPageToken\":\"").append(nextPageToken).append("\"");
+        json.append(",\"items\":[");
+        for (int i = 0; i < tasks.length; i++) {
+            if (i > 0) json.append(',');
+            json.append(tasks[i]);
+        }
+        return json.append("]}").toString();
+    }
+
+    private void enqueue(String body) {
+        server.enqueue(new MockResponse().setHeader("Content-Type", "application/json; charset=UTF-8").setBody(body));
+    }
+
+    private static String ids(List<Task> tasks) {
+        StringBuilder ids = new StringBuilder();
+        for (Task task : tasks) {
+            ids.append(task.id).append(' ');
+        }
+        return ids.toString().trim();
+    }
+
+    private List<Task> fullSync() throws Exception {
+        enqueue(page("list-1", null,
+                task("a", "a1", "2020-01-01T00:00:00.000Z"),
+                task("b", "b1", "2020-01-01T00:00:00.000Z"),
+                task("c", "c1", "2020-01-01T00:00:00.000Z")));
+        List<Task> tasks = syncer.sync(service, LIST_ID, NONE_EXCLUDED);
+        RecordedRequest request = server.takeRequest();
+        assertEquals("false", request.getRequestUrl().queryParameter("showCompleted"));
+        assertNull(request.getRequestUrl().queryParameter("updatedMin"));
+        return tasks;
+    }
+
+    @Test
+    public void deltaAppliesAddsEditsAndRemovals() throws Exception {
+        assertEquals("a b c", ids(fullSync()));
+
+        enqueue(page("list-2", null,
+                task("a", "a2", UPDATED),
+                task("b", "b2", UPDATED, ",\"deleted\":true"),
+                task("c", "c2", UPDATED, ",\"status\":\"completed\""),
+                task("d", "d1", UPDATED)));
+        List<Task> tasks = syncer.sync(service, LIST_ID, NONE_EXCLUDED);
+
+        RecordedRequest request = server.takeRequest();
+        assertTrue(request.getRequestUrl().queryParameter("updatedMin") != null);
+        assertEquals("true", request.getRequestUrl().queryParameter("showDeleted"));
+        assertEquals("true", request.getRequestUrl().queryParameter("showCompleted"));
+        assertEquals("true", request.getRequestUrl().queryParameter("showHidden"));
+        assertEquals("list-1", request.getHeader("If-None-Match"));
+        assertEquals("a d", ids(tasks));
+        assertEquals("Task a", tasks.get(0).title);
+    }
+
+    @Test
+    public void notModifiedReturnsSameTree() throws Exception {
+        List<Task> tasks = fullSync();
+
+        server.enqueue(new MockResponse().setResponseCode(304));
+        assertSame(tasks, syncer.sync(service, LIST_ID, NONE_EXCLUDED));
+        assertEquals("list-1", server.takeRequest().getHeader("If-None-Match"));
+    }
+
+    @Test
+    public void mergesEveryPageOfDelta() throws Exception {
+        fullSync();
+
+        enqueue(page("list-2", "page2", task("d", "d1", UPDATED)));
+        enqueue(page("list-2", null, task("a", "a2", UPDATED_LATER, ",\"deleted\":true")));
+        List<Task> tasks = syncer.sync(service, LIST_ID, NONE_EXCLUDED);
+
+        RecordedRequest first = server.takeRequest();
+        RecordedRequest second = server.takeRequest();
+        assertNull(first.getRequestUrl().queryParameter("pageToken"));
+        assertEquals("page2", second.getRequestUrl().queryParameter("pageToken"));
+        // only the first page is conditional, the rest belong to a response that changed
+        assertNull(second.getHeader("If-None-Match"));
+        assertEquals(first.getRequestUrl().queryParameter("updatedMin"), second.getRequestUrl().queryParameter("updatedMin"));
+        assertEquals("b c d", ids(tasks));
+
+        // the window moves to the newest change on any page
+        enqueue(page("list-2", null));
+        syncer.sync(service, LIST_ID, NONE_EXCLUDED);
+        String updatedMin = server.takeRequest().getRequestUrl().queryParameter("updatedMin");
+        assertEquals(DateTime.parseRfc3339(UPDATED_LATER).getValue(), DateTime.parseRfc3339(updatedMin).getValue());
+    }
+
+    @Test
+    public void overlappingDeltaIsUnchanged() throws Exception {
+        fullSync();
+        enqueue(page("list-2", null, task("d", "d1", UPDATED)));
+        List<Task> tasks = syncer.sync(service, LIST_ID, NONE_EXCLUDED);
+        server.takeRequest();
+
+        // the same task again, as tasks changed at the window's start are delivered again
+        enqueue(page("list-2", null, task("d", "d1", UPDATED)));
+        assertSame(tasks, syncer.sync(service, LIST_ID, NONE_EXCLUDED));
+        assertNull(server.takeRequest().getHeader("If-None-Match"));
+
+        // nothing visible changed but the etag did, the newest one is sent from then on
+        enqueue(page("list-3", null, task("d", "d1", UPDATED)));
+        assertSame(tasks, syncer.sync(service, LIST_ID, NONE_EXCLUDED));
+        assertEquals("list-2", server.takeRequest().getHeader("If-None-Match"));
+
+        server.enqueue(new MockResponse().setResponseCode(304));
+        assertSame(tasks, syncer.sync(service, LIST_ID, NONE_EXCLUDED));
+        assertEquals("list-3", server.takeRequest().getHeader("If-None-Match"));
+    }
+
+    @Test
+    public void leavesOutExcludedTasks() throws Exception {
+        fullSync();
+
+        // completed locally but not yet sent, the delta still has it as not completed
+        enqueue(page("list-2", null, task("b", "b2", UPDATED)));
+        List<Task> tasks = syncer.sync(service, LIST_ID, Collections.singleton("b"));
+        server.takeRequest();
+        assertEquals("a c", ids(tasks));
+    }
+
+    @Test
+    public void trimKeepsStateOfGivenLists() throws Exception {
+        List<Task> tasks = fullSync();
+
+        syncer.trim(Collections.singleton(LIST_ID));
+        server.enqueue(new MockResponse().setResponseCode(304));
+        assertSame(tasks, syncer.sync(service, LIST_ID, NONE_EXCLUDED));
+        assertEquals("list-1", server.takeRequest().getHeader("If-None-Match"));
+
+        // dropped, so the next sync is a full one
+        syncer.trim(Collections.<String>emptySet());
+        assertEquals("a b c", ids(fullSync()));
+    }
+
+    @Test
+    public void syncAllBatchesFirstPages() throws Exception {
+        String boundary = "batch_boundary";
+        String body = "--" + boundary + "\r\n"
+                + part("{\"items\":[{\"id\":\"list\",\"title\":\"List\"},{\"id\":\"other\",\"title\":\"Other\"}]}")
+                + "--" + boundary + "\r\n"
+                + part(page("list-1", "page2", task("a", "a1", "2020-01-01T00:00:00.000Z")))
+                + "--" + boundary + "\r\n"
+                + part(page("other-1", null, task("x", "x1", "2020-01-01T00:00:00.000Z")))
+                + "--" + boundary + "--\r\n";
+        server.enqueue(new MockResponse().setHeader("Content-Type", "multipart/mixed; boundary=" + boundary).setBody(body));
+        enqueue(page("list-1", null, task("b", "b1", "2020-01-01T00:00:00.000Z")));
+
+        Map<String, Set<String>> excluded = new HashMap<>();
+        TaskListSyncer.BatchResult result = syncer.syncAll(service, Arrays.asList("other", "list"), excluded);
+
+        assertTrue(server.takeRequest().getPath().startsWith("/batch/tasks/v1"));
+        assertEquals("page2", server.takeRequest().getRequestUrl().queryParameter("pageToken"));
+        assertEquals(2, result.taskLists.size());
+        assertTrue(result.errors.isEmpty());
+        assertEquals("a b", ids(result.tasks.get("list")));
+        assertEquals("x", ids(result.tasks.get("other")));
+
+        // the next sync of the list is a delta
+        enqueue(page("list-2", null));
+        List<Task> tasks = syncer.sync(service, LIST_ID, NONE_EXCLUDED);
+        assertTrue(server.takeRequest().getRequestUrl().queryParameter("updatedMin") != null);
+        assertSame(result.tasks.get("list"), tasks);
+    }
+
+    @Test
+    public void syncAllSendsEtagWithFirstPages() throws Exception {
+        List<Task> tasks = fullSync();
+        syncer.reset("other");
+
+        String boundary = "batch_boundary";
+        String body = "--" + boundary + "\r\n"
+                + part("{\"items\":[{\"id\":\"list\",\"title\":\"List\"}]}")
+                + "--" + boundary + "\r\n"
+                + part("304 Not Modified", null)
+                + "--" + boundary + "\r\n"
+                + part("404 Not Found", "{\"error\":{\"code\":404,\"message\":\"Not Found\"}}")
+                + "--" + boundary + "--\r\n";
+        server.enqueue(new MockResponse().setHeader("Content-Type", "multipart/mixed; boundary=" + boundary).setBody(body));
+
+        TaskListSyncer.BatchResult result = syncer.syncAll(service, Arrays.asList("other", "list"), new HashMap<String, Set<String>>());
+
+        // the list's part is conditional, the other's is a full sync
+        String batch = server.takeRequest().getBody().readUtf8();
+        assertTrue(batch, batch.contains("If-None-Match: list-1"));
+        assertEquals(1, batch.split("If-None-Match").length - 1);
+        assertSame(tasks, result.tasks.get(LIST_ID));
+        assertEquals("HTTP 404", result.errors.get("other").getMessage());
+        // nothing more is fetched after the full sync and the batch
+        assertEquals(2, server.getRequestCount());
+    }
+
+    private static String part(String json) {
+        return part("200 OK", json);
+    }
+
+    private static String part(String status, String json) {
+        return "Content-Type: application/http\r\n\r\n"
+                + "HTTP/1.1 " + status + "\r\n"
+                + (json == null ? "\r\n" : "Content-Type: application/json; charset=UTF-8\r\n\r\n" + json + "\r\n");
+    }
+}
@@ -0,0 +1,77 @@
+package com.mrbbot.taskification.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class TaskTreeBuilderTest {
+    // a (a1 (a1x), a2), b, c (c1)
+    private static List<Task> tree() {
+        Map<String, TaskItem> items = new HashMap<>();
+        String[][] tasks = {{"a", null}, {"a1", "a"}, {"a1x", "a1"}, {"a2", "a"}, {"b", null}, {"c", null}, {"c1", "c"}};
+        for (int i = 0; i < tasks.length; i++) {
+            String id = tasks[i][0];
+            items.put(id, new TaskItem(id, "e", "Task " + id, null, tasks[i][1], String.format("%08d", i), TaskItem.NO_DUE));
+        }
+        return TaskTreeBuilder.build(items);
+    }
+
+    // the tree's shape as a string, each task's depth then its ID
+    private static String dump(List<Task> tasks) {
+        StringBuilder builder = new StringBuilder();
+        for (Task task : tasks) {
+            if (builder.length() > 0) builder.append(' ');
+            builder.append(task.depth).append(task.id);
+            if (!task.subTasks.isEmpty()) builder.append('(').append(dump(task.subTasks)).append(')');
+        }
+        return builder.toString();
+    }
+
+    private static List<Task> without(List<Task> tasks, String... ids) {
+        return TaskTreeBuilder.without(tasks, new HashSet<>(Arrays.asList(ids)));
+    }
+
+    @Test
+    public void returnsSameTreeWhenNothingRemoved() {
+        List<Task> tasks = tree();
+        assertEquals("0a(1a1(2a1x) 1a2) 0b 0c(1c1)", dump(tasks));
+        assertSame(tasks, TaskTreeBuilder.without(tasks, Collections.<String>emptySet()));
+        assertSame(tasks, without(tasks, "missing"));
+    }
+
+    @Test
+    public void sharesUnchangedTasks() {
+        List<Task> tasks = tree();
+        List<Task> result = without(tasks, "b");
+        assertEquals("0a(1a1(2a1x) 1a2) 0c(1c1)", dump(result));
+        assertSame(tasks.get(0), result.get(0));
+        assertSame(tasks.get(2), result.get(1));
+
+        // only the removed task's ancestors are copied
+        result = without(tasks, "a2");
+        assertEquals("0a(1a1(2a1x)) 0b 0c(1c1)", dump(result));
+        assertNotSame(tasks.get(0), result.get(0));
+        assertSame(tasks.get(0).subTasks.get(0), result.get(0).subTasks.get(0));
+        assertSame(tasks.get(1), result.get(1));
+        assertEquals(6, Task.treeSize(result));
+    }
+
+    @Test
+    public void promotesSubTasksOfRemovedTasks() {
+        List<Task> tasks = tree();
+        // like tasks whose parent is missing, they're shown at the top level after where it was
+        assertEquals("0a1(1a1x) 0a2 0b 0c(1c1)", dump(without(tasks, "a")));
+        assertEquals("0a(1a2) 0a1x 0b 0c(1c1)", dump(without(tasks, "a1")));
+        assertEquals("0a1x 0a2 0b 0c", dump(without(tasks, "a", "a1", "c1")));
+        assertEquals("", dump(without(tasks, "a", "a1", "a1x", "a2", "b", "c", "c1")));
+    }
+}
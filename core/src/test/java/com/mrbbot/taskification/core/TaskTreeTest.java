@@ -0,0 +1,183 @@
+package com.mrbbot.taskification.core;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TaskTreeTest {
+    private int etag;
+
+    private TaskItem item(String id, String parent, String position) {
+        return new TaskItem(id, "e" + etag++, "Task " + id, null, parent, position, TaskItem.NO_DUE);
+    }
+
+    // the tree's shape and contents as a string, so trees can be compared regardless of instances
+    private static String dump(List<Task> tasks) {
+        StringBuilder builder = new StringBuilder();
+        for (Task task : tasks) {
+            builder.append(task.depth).append(task.id).append(':').append(task.title)
+                    .append('(').append(dump(task.subTasks)).append(')');
+        }
+        return builder.toString();
+    }
+
+    private static void collect(List<Task> tasks, Set<Task> nodes) {
+        for (Task task : tasks) {
+            nodes.add(task);
+            collect(task.subTasks, nodes);
+        }
+    }
+
+    private static Set<Task> nodes(List<Task> tasks) {
+        Set<Task> nodes = Collections.newSetFromMap(new IdentityHashMap<Task, Boolean>());
+        collect(tasks, nodes);
+        return nodes;
+    }
+
+    @Test
+    public void matchesBuilderAfterRandomChanges() {
+        Random random = new Random(1);
+        Map<String, TaskItem> items = new HashMap<>();
+        TaskTree tree = new TaskTree();
+        int count = 500;
+        for (int i = 0; i < count; i++) {
+            String parent = i > 0 && random.nextInt(4) == 0 ? "t" + random.nextInt(i) : null;
+            TaskItem item = item("t" + i, parent, String.format("%08d", random.nextInt(1 << 30)));
+            items.put(item.id, item);
+            tree.put(item);
+        }
+        List<Task> previous = tree.snapshot();
+        assertEquals(dump(TaskTreeBuilder.build(items)), dump(previous));
+
+        for (int round = 0; round < 500; round++) {
+            int changes = random.nextInt(4);
+            for (int change = 0; change < changes; change++) {
+                // IDs past the initial tasks add new ones, and parents that may be missing
+                String id = "t" + random.nextInt(count + 50);
+                TaskItem old = items.get(id);
+                int action = random.nextInt(4);
+                if (action == 0) {
+                    items.remove(id);
+                    tree.remove(id);
+                    continue;
+                }
+                String parent = old == null ? null : old.parent;
+                if (action == 1) {
+                    parent = random.nextBoolean() ? null : "t" + random.nextInt(count + 50);
+                    // a task can't be its own ancestor, the API never sends cycles
+                    if (isAncestorOrSelf(items, id, parent)) parent = null;
+                }
+                String position = action == 2 || old == null ? String.format("%08d", random.nextInt(1 << 30)) : old.position;
+                TaskItem item = item(id, parent, position);
+                items.put(id, item);
+                tree.put(item);
+            }
+
+            List<Task> current = tree.snapshot();
+            assertEquals("round " + round, dump(TaskTreeBuilder.build(items)), dump(current));
+            if (changes == 0) assertSame(previous, current);
+            previous = current;
+        }
+    }
+
+    private static boolean isAncestorOrSelf(Map<String, TaskItem> items, String id, String parent) {
+        while (parent != null) {
+            if (parent.equals(id)) return true;
+            TaskItem item = items.get(parent);
+            parent = item == null ? null : item.parent;
+        }
+        return false;
+    }
+
+    @Test
+    public void returnsSameSnapshotWhenUnchanged() {
+        TaskTree tree = new TaskTree();
+        TaskItem a = item("a", null, "1");
+        tree.put(a);
+        List<Task> snapshot = tree.snapshot();
+        long version = tree.getVersion();
+
+        // the same version of a task again isn't a change
+        assertFalse(tree.put(a));
+        assertFalse(tree.remove("missing"));
+        assertSame(snapshot, tree.snapshot());
+        assertEquals(version, tree.getVersion());
+    }
+
+    @Test
+    public void sharesUnchangedSubtrees() {
+        TaskTree tree = new TaskTree();
+        tree.put(item("a", null, "1"));
+        tree.put(item("a1", "a", "1"));
+        tree.put(item("a2", "a", "2"));
+        tree.put(item("b", null, "2"));
+        tree.put(item("b1", "b", "1"));
+        List<Task> before = tree.snapshot();
+
+        assertTrue(tree.put(item("a2", "a", "2")));
+        List<Task> after = tree.snapshot();
+
+        assertNotSame(before, after);
+        // the changed task and its ancestors are rebuilt
+        assertNotSame(before.get(0), after.get(0));
+        assertNotSame(before.get(0).subTasks.get(1), after.get(0).subTasks.get(1));
+        // everything else is the same instance
+        assertSame(before.get(0).subTasks.get(0), after.get(0).subTasks.get(0));
+        assertSame(before.get(1), after.get(1));
+        Set<Task> fresh = nodes(after);
+        fresh.removeAll(nodes(before));
+        assertEquals(2, fresh.size());
+    }
+
+    @Test
+    public void showsSubTasksOfMissingParentAtTopLevel() {
+        TaskTree tree = new TaskTree();
+        tree.put(item("a", null, "2"));
+        tree.put(item("b1", "b", "1"));
+        tree.put(item("b2", "b", "3"));
+        // sorted among the top level tasks by their own positions
+        assertEquals("0b1:Task b1()0a:Task a()0b2:Task b2()", dump(tree.snapshot()));
+
+        // the parent arrives, its sub tasks move under it
+        tree.put(item("b", null, "1"));
+        List<Task> withParent = tree.snapshot();
+        assertEquals("0b:Task b(1b1:Task b1()1b2:Task b2())0a:Task a()", dump(withParent));
+
+        // and back to the top level when it's removed
+        tree.remove("b");
+        List<Task> withoutParent = tree.snapshot();
+        assertEquals("0b1:Task b1()0a:Task a()0b2:Task b2()", dump(withoutParent));
+        // the untouched task is shared throughout
+        assertSame(withParent.get(1), withoutParent.get(1));
+    }
+
+    @Test
+    public void rebuildsTasksMovedToAnotherDepth() {
+        TaskTree tree = new TaskTree();
+        tree.put(item("a", null, "1"));
+        tree.put(item("b", null, "2"));
+        tree.put(item("b1", "b", "1"));
+        List<Task> before = tree.snapshot();
+
+        // b moves under a, taking its sub task with it
+        tree.put(item("b", "a", "1"));
+        List<Task> after = tree.snapshot();
+
+        assertEquals("0a:Task a(1b:Task b(2b1:Task b1()))", dump(after));
+        Task movedSubTask = after.get(0).subTasks.get(0).subTasks.get(0);
+        assertEquals(2, movedSubTask.depth);
+        assertNotSame(before.get(1).subTasks.get(0), movedSubTask);
+    }
+}
@@ -0,0 +1,138 @@
+package com.mrbbot.taskification.core;
+
+import com.google.api.client.util.DateTime;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class TasksPageReaderTest {
+    private static final String[] TIMESTAMPS = {
+            "2020-04-12T00:00:00.000Z",
+            "2020-04-12T13:45:30Z",
+            "2020-04-12T13:45:30.5Z",
+            "2020-04-12T13:45:30.12Z",
+            "2020-04-12T13:45:30.123456789Z",
+            "1969-12-31T23:59:59.999Z",
+            "2000-02-29T12:00:00.000Z",
+            "2024-02-29T00:00:00.000Z",
+            "2020-04-30T00:00:00.000Z",
+            "2020-12-31T23:59:59.999Z",
+            "2100-03-01T00:00:00.000Z",
+            "2020-04-12T13:45:30+01:00",
+            "2020-04-12T13:45:30.250-05:30",
+            "2020-04-12",
+    };
+
+    private static final String[] MALFORMED = {
+            "",
+            "not a date",
+            "2020-04-12T13:45:30.1a2Z",
+            "2020-13-12T13:45:30Z",
+            "2020-04-00T00:00:00.000Z",
+            "2020-04-31T00:00:00.000Z",
+            "2024-02-30T00:00:00.000Z",
+            "2023-02-29T00:00:00.000Z",
+            "2100-02-29T00:00:00.000Z",
+            "2020-04-12T24:45:30Z",
+            "2020-04-12T13:60:30Z",
+            "2020-04-12T+3:45:30Z",
+    };
+
+    @Test
+    public void parsesTimestampsLikeApiClient() {
+        for (String value : TIMESTAMPS) {
+            assertEquals(value, DateTime.parseRfc3339(value).getValue(), TasksPageReader.parseDateTime(value));
+        }
+    }
+
+    @Test
+    public void rejectsMalformedTimestamps() {
+        for (String value : MALFORMED) {
+            try {
+                TasksPageReader.parseDateTime(value);
+                fail("Parsed " + value);
+            } catch (NumberFormatException e) {
+                // expected
+            }
+        }
+    }
+
+    private static class RecordingCallback implements TasksPageReader.Callback {
+        final List<TaskItem> tasks = new ArrayList<>();
+        final List<String> removed = new ArrayList<>();
+
+        @Override
+        public void onTask(TaskItem item) {
+            tasks.add(item);
+        }
+
+        @Override
+        public void onTaskRemoved(String id) {
+            removed.add(id);
+        }
+    }
+
+    private static TasksPageReader.Page read(String json, RecordingCallback callback) throws IOException {
+        return TasksPageReader.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), callback);
+    }
+
+    @Test
+    public void readsTasksAndPageFields() throws IOException {
+        RecordingCallback callback = new RecordingCallback();
+        TasksPageReader.Page page = read("{"
+                + "\"kind\":\"tasks#tasks\","
+                + "\"unknownObject\":{\"items\":[{\"id\":\"ignored\"}],\"etag\":\"ignored\"},"
+                + "\"etag\":\"\\\"list-etag\\\"\","
+                + "\"items\":["
+                + "{\"id\":\"a\",\"etag\":\"a1\",\"title\":\"Task a\",\"notes\":\"Notes\",\"parent\":\"p\",\"position\":\"001\","
+                + "\"due\":\"2020-04-12T00:00:00.000Z\",\"updated\":\"2020-04-10T10:00:00.000Z\",\"links\":[{\"type\":\"email\"}]},"
+                + "{\"id\":\"b\",\"status\":\"completed\",\"updated\":\"2020-04-11T10:00:00.000Z\"},"
+                + "{\"id\":\"c\",\"deleted\":true},"
+                + "{\"id\":\"d\",\"hidden\":true},"
+                + "{\"title\":\"no ID\"}"
+                + "],"
+                + "\"nextPageToken\":\"next\","
+                + "\"unknownArray\":[1,[2],{\"3\":4}]"
+                + "}", callback);
+
+        assertEquals("\"list-etag\"", page.etag);
+        assertEquals("next", page.nextPageToken);
+        assertEquals(DateTime.parseRfc3339("2020-04-11T10:00:00.000Z").getValue(), page.latestUpdated);
+
+        assertEquals(1, callback.tasks.size());
+        TaskItem task = callback.tasks.get(0);
+        assertEquals("a", task.id);
+        assertEquals("a1", task.etag);
+        assertEquals("Task a", task.title);
+        assertEquals("Notes", task.notes);
+        assertEquals("p", task.parent);
+        assertEquals("001", task.position);
+        assertEquals(DateTime.parseRfc3339("2020-04-12T00:00:00.000Z").getValue(), task.due);
+        assertEquals("[b, c, d]", callback.removed.toString());
+    }
+
+    @Test
+    public void readsLastPage() throws IOException {
+        RecordingCallback callback = new RecordingCallback();
+        TasksPageReader.Page page = read("{\"etag\":\"e\",\"items\":[{\"id\":\"a\",\"title\":\"Task a\"}]}", callback);
+
+        assertNull(page.nextPageToken);
+        assertEquals(TasksPageReader.NO_UPDATED, page.latestUpdated);
+        assertEquals(TaskItem.NO_DUE, callback.tasks.get(0).due);
+        assertNull(callback.tasks.get(0).parent);
+    }
+
+    @Test(expected = IOException.class)
+    public void failsOnMalformedDue() throws IOException {
+        read("{\"items\":[{\"id\":\"a\",\"due\":\"tomorrow\"}]}", new RecordingCallback());
+    }
+}
@@ -0,0 +1,437 @@
+package com.mrbbot.taskification.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// a stand in for the parts of the Tasks API the app uses: tasklists.list, tasks.list with paging,
+// updatedMin, the show* flags and etags, and batches of those requests. lists live in memory and
+// can be changed between syncs with mutate()
+final class FakeTasksServer {
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+    private static final DateTimeFormatter RFC_3339 = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+
+    private static final String API_PATH = "/tasks/v1/";
+    private static final String TASK_LISTS_PATH = API_PATH + "users/@me/lists";
+    private static final String LISTS_PATH = API_PATH + "lists/";
+    private static final String BATCH_PATH = "/batch/tasks/v1";
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private static class FakeTask {
+        final String id;
+        final String parent;
+        final String position;
+        String etag;
+        String title;
+        String notes;
+        long due;
+        long updated;
+        boolean completed;
+        boolean deleted;
+
+        FakeTask(String id, String parent, String position) {
+            this.id = id;
+            this.parent = parent;
+            this.position = position;
+        }
+    }
+
+    private static class FakeList {
+        final String id;
+        final String title;
+        // in insertion order, which like the API's isn't the display order
+        final Map<String, FakeTask> tasks = new LinkedHashMap<>();
+        long version;
+
+        FakeList(String id, String title) {
+            this.id = id;
+            this.title = title;
+        }
+
+        String etag() {
+            return "\"" + id + "-" + version + "\"";
+        }
+    }
+
+    private static class Response {
+        final int status;
+        final String etag;
+        final byte[] body;
+
+        Response(int status, String etag, byte[] body) {
+            this.status = status;
+            this.etag = etag;
+            this.body = body;
+        }
+    }
+
+    private final Map<String, FakeList> lists = new LinkedHashMap<>();
+    private final Random random;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong etagCounter = new AtomicLong();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    private volatile long latencyMs;
+    private volatile double failureRate;
+
+    FakeTasksServer(long seed) {
+        this.random = new Random(seed);
+    }
+
+    // latency is added to every HTTP request, batches included, and failures are decided per
+    // request or batch part and returned as 503s
+    void setLatency(long latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    long getRequestCount() {
+        return requests.get();
+    }
+
+    // lists shaped like the benchmark's synthetic ones: a quarter of tasks are sub tasks, about
+    // half have a due date and a third have notes
+    synchronized void addLists(int count, int tasksPerList) {
+        long now = System.currentTimeMillis();
+        long today = now / DAY_MS * DAY_MS;
+        for (int l = 0; l < count; l++) {
+            FakeList list = new FakeList("list" + lists.size(), "List " + lists.size());
+            List<FakeTask> added = new ArrayList<>(tasksPerList);
+            for (int i = 0; i < tasksPerList; i++) {
+                String parent = null;
+                if (i > 0 && random.nextInt(4) == 0) {
+                    parent = added.get(random.nextInt(i)).id;
+                }
+                FakeTask task = new FakeTask(list.id + "-task" + i, parent, String.format("%020d", random.nextInt(Integer.MAX_VALUE)));
+                task.etag = nextEtag();
+                task.title = "Task number " + i;
+                task.notes = random.nextInt(3) == 0 ? "Notes for task " + i : null;
+                task.due = random.nextBoolean() ? today + (random.nextInt(30) - 5) * DAY_MS : -1;
+                // last edited before the harness started, so delta syncs only return what mutate() changed
+                task.updated = now - DAY_MS - random.nextInt((int) DAY_MS);
+                added.add(task);
+                list.tasks.put(task.id, task);
+            }
+            lists.put(list.id, list);
+        }
+    }
+
+    // edits, completes or deletes count tasks picked at random across every list
+    synchronized void mutate(int count) {
+        List<FakeList> all = new ArrayList<>(lists.values());
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count && !all.isEmpty(); i++) {
+            FakeList list = all.get(random.nextInt(all.size()));
+            if (list.tasks.isEmpty()) continue;
+            List<FakeTask> tasks = new ArrayList<>(list.tasks.values());
+            FakeTask task = tasks.get(random.nextInt(tasks.size()));
+            if (task.deleted) continue;
+            int action = random.nextInt(10);
+            if (action == 0) {
+                task.deleted = true;
+            } else if (action < 3) {
+                task.completed = true;
+            } else {
+                task.title = "Task edited at " + now;
+            }
+            task.etag = nextEtag();
+            task.updated = now;
+            list.version++;
+        }
+    }
+
+    private String nextEtag() {
+        return "\"etag" + etagCounter.incrementAndGet() + "\"";
+    }
+
+    String start() throws IOException {
+        // headers and body are written separately, with Nagle's algorithm every response would
+        // wait on a delayed ack and the harness would mostly measure that
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newFixedThreadPool(8);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    handleExchange(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handleExchange(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        sleep();
+        // drain the request first, some clients won't read a response until they've sent it all
+        byte[] requestBody = readAll(exchange.getRequestBody());
+        String path = exchange.getRequestURI().getRawPath();
+
+        Response response;
+        String contentType = "application/json; charset=UTF-8";
+        if (exchange.getRequestMethod().equals("POST") && path.equals(BATCH_PATH)) {
+            String boundary = getBoundary(exchange.getRequestHeaders().getFirst("Content-Type"));
+            String responseBoundary = "batch_" + Long.toHexString(random.nextLong());
+            response = new Response(200, null, handleBatch(new String(requestBody, StandardCharsets.UTF_8), boundary, responseBoundary));
+            contentType = "multipart/mixed; boundary=" + responseBoundary;
+        } else {
+            response = handle(exchange.getRequestMethod(), exchange.getRequestURI(), exchange.getRequestHeaders().getFirst("If-None-Match"));
+        }
+
+        if (response.etag != null) {
+            exchange.getResponseHeaders().set("ETag", response.etag);
+        }
+        if (response.status == 304) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(response.status, response.body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(response.body);
+        out.close();
+    }
+
+    private Response handle(String method, URI uri, String ifNoneMatch) {
+        if (failureRate > 0 && nextDouble() < failureRate) {
+            return error(503, "Backend Error");
+        }
+        if (!method.equals("GET")) {
+            return error(405, "Method Not Allowed");
+        }
+        String path = uri.getRawPath();
+        if (path.equals(TASK_LISTS_PATH)) {
+            return getTaskLists();
+        }
+        if (path.startsWith(LISTS_PATH) && path.endsWith("/tasks")) {
+            String listId = decode(path.substring(LISTS_PATH.length(), path.length() - "/tasks".length()));
+            return getTasks(listId, parseQuery(uri.getRawQuery()), ifNoneMatch);
+        }
+        return error(404, "Not Found");
+    }
+
+    private synchronized Response getTaskLists() {
+        StringBuilder json = new StringBuilder("{\"kind\":\"tasks#taskLists\",\"items\":[");
+        boolean first = true;
+        for (FakeList list : lists.values()) {
+            if (!first) json.append(',');
+            first = false;
+            json.append("{\"kind\":\"tasks#taskList\",\"id\":\"").append(list.id)
+                    .append("\",\"title\":\"").append(list.title).append("\"}");
+        }
+        json.append("]}");
+        return new Response(200, null, json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private synchronized Response getTasks(String listId, Map<String, String> query, String ifNoneMatch) {
+        FakeList list = lists.get(listId);
+        if (list == null) {
+            return error(404, "Not Found");
+        }
+        int maxResults = Math.min(MAX_PAGE_SIZE, parseInt(query.get("maxResults"), MAX_PAGE_SIZE));
+        int offset = parseInt(query.get("pageToken"), 0);
+        long updatedMin = query.containsKey("updatedMin")
+                ? OffsetDateTime.parse(query.get("updatedMin")).toInstant().toEpochMilli()
+                : Long.MIN_VALUE;
+        boolean showCompleted = !"false".equals(query.get("showCompleted"));
+        boolean showDeleted = "true".equals(query.get("showDeleted"));
+
+        // like the API's, the etag changes whenever anything in the list does
+        String etag = list.etag();
+        if (etag.equals(ifNoneMatch)) {
+            return new Response(304, etag, null);
+        }
+
+        List<FakeTask> matching = new ArrayList<>();
+        for (FakeTask task : list.tasks.values()) {
+            if (task.updated < updatedMin) continue;
+            if (task.deleted && !showDeleted) continue;
+            // completed tasks are never cleared here, so showHidden makes no difference
+            if (task.completed && !showCompleted) continue;
+            matching.add(task);
+        }
+
+        StringBuilder json = new StringBuilder("{\"kind\":\"tasks#tasks\",\"etag\":\"")
+                .append(etag.replace("\"", "\\\"")).append("\"");
+        int end = Math.min(matching.size(), offset + maxResults);
+        if (end < matching.size()) {
+            json.append(",\"nextPageToken\":\"").append(end).append('"');
+        }
+        json.append(",\"items\":[");
+        for (int i = offset; i < end; i++) {
+            if (i > offset) json.append(',');
+            appendTask(json, list, matching.get(i));
+        }
+        json.append("]}");
+        return new Response(200, etag, json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // with the extra fields the API sends even though the app asks for a subset of them
+    private static void appendTask(StringBuilder json, FakeList list, FakeTask task) {
+        json.append("{\"kind\":\"tasks#task\",\"id\":\"").append(task.id)
+                .append("\",\"etag\":\"").append(task.etag.replace("\"", "\\\""))
+                .append("\",\"title\":\"").append(task.title)
+                .append("\",\"updated\":\"").append(RFC_3339.format(Instant.ofEpochMilli(task.updated)))
+                .append("\",\"selfLink\":\"https://www.googleapis.com/tasks/v1/lists/").append(list.id).append("/tasks/").append(task.id).append('"');
+        if (task.parent != null) json.append(",\"parent\":\"").append(task.parent).append('"');
+        json.append(",\"position\":\"").append(task.position).append('"');
+        if (task.notes != null) json.append(",\"notes\":\"").append(task.notes).append('"');
+        json.append(",\"status\":\"").append(task.completed ? "completed" : "needsAction").append('"');
+        if (task.due >= 0) json.append(",\"due\":\"").append(RFC_3339.format(Instant.ofEpochMilli(task.due))).append('"');
+        if (task.deleted) json.append(",\"deleted\":true");
+        json.append(",\"links\":[]}");
+    }
+
+    // each part of a batch is an HTTP request, answered with an HTTP response part in the same order
+    private byte[] handleBatch(String body, String boundary, String responseBoundary) {
+        StringBuilder out = new StringBuilder();
+        int partIndex = 0;
+        for (String part : body.split("--" + boundary)) {
+            int requestStart = part.indexOf("\r\n\r\n");
+            if (requestStart < 0) continue;
+            String contentId = getHeader(part.substring(0, requestStart), "Content-ID");
+            String request = part.substring(requestStart + 4);
+            int lineEnd = request.indexOf("\r\n");
+            String[] requestLine = (lineEnd < 0 ? request : request.substring(0, lineEnd)).split(" ");
+            if (requestLine.length < 2) continue;
+            String headers = lineEnd < 0 ? "" : request.substring(lineEnd + 2);
+
+            Response response = handle(requestLine[0], URI.create(requestLine[1]), getHeader(headers, "If-None-Match"));
+            out.append("--").append(responseBoundary).append("\r\n")
+                    .append("Content-Type: application/http\r\n")
+                    .append("Content-ID: response-").append(contentId == null ? String.valueOf(partIndex) : contentId.replaceAll("[<>]", "")).append("\r\n\r\n")
+                    .append("HTTP/1.1 ").append(response.status).append(response.status == 200 ? " OK" : " Error").append("\r\n");
+            if (response.etag != null) out.append("ETag: ").append(response.etag).append("\r\n");
+            if (response.body != null) {
+                out.append("Content-Type: application/json; charset=UTF-8\r\n")
+                        .append("Content-Length: ").append(response.body.length).append("\r\n\r\n")
+                        .append(new String(response.body, StandardCharsets.UTF_8));
+            } else {
+                out.append("\r\n");
+            }
+            out.append("\r\n");
+            partIndex++;
+        }
+        out.append("--").append(responseBoundary).append("--\r\n");
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Response error(int status, String message) {
+        String json = "{\"error\":{\"errors\":[{\"domain\":\"global\",\"reason\":\"fake\",\"message\":\"" + message + "\"}],"
+                + "\"code\":" + status + ",\"message\":\"" + message + "\"}}";
+        return new Response(status, null, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void sleep() {
+        long latency = latencyMs;
+        if (latency <= 0) return;
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized double nextDouble() {
+        return random.nextDouble();
+    }
+
+    private static String getBoundary(String contentType) {
+        for (String parameter : contentType.split(";")) {
+            parameter = parameter.trim();
+            if (parameter.startsWith("boundary=")) {
+                return parameter.substring("boundary=".length()).replace("\"", "");
+            }
+        }
+        throw new IllegalArgumentException("No boundary in " + contentType);
+    }
+
+    private static String getHeader(String headers, String name) {
+        for (String line : headers.split("\r\n")) {
+            int separator = line.indexOf(':');
+            if (separator > 0 && line.substring(0, separator).trim().equalsIgnoreCase(name)) {
+                return line.substring(separator + 1).trim();
+            }
+        }
+        return null;
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null) return parameters;
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator < 0) {
+                parameters.put(decode(pair), "");
+            } else {
+                parameters.put(decode(pair.substring(0, separator)), decode(pair.substring(separator + 1)));
+            }
+        }
+        return parameters;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int parseInt(String value, int fallback) {
+        if (value == null) return fallback;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,137 @@
+package com.mrbbot.taskification.loadtest;
+
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.tasks.Tasks;
+import com.mrbbot.taskification.core.DueDateLabeller;
+import com.mrbbot.taskification.core.OkHttpTransport;
+import com.mrbbot.taskification.core.SyncMetrics;
+import com.mrbbot.taskification.core.Task;
+import com.mrbbot.taskification.core.TaskLineRenderer;
+import com.mrbbot.taskification.core.TaskListSyncer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// syncs every list from a fake Tasks API through the same fetch, parse, tree build and render
+// steps as the app, then changes some tasks and syncs again, printing how long each cycle took,
+// how many bytes it transferred and the peak heap. the first cycle is a full sync, the rest are
+// delta syncs
+public final class LoadHarness {
+    // the notification's limits, see ForegroundService
+    private static final TaskLineRenderer RENDERER = new TaskLineRenderer(6, 100, 400, 120);
+
+    private LoadHarness() {
+    }
+
+    // args: lists, tasks per list, cycles, changes per cycle, latency in ms, failure rate
+    public static void main(String[] args) throws IOException {
+        int listCount = intArg(args, 0, 10);
+        int tasksPerList = intArg(args, 1, 1000);
+        int cycles = intArg(args, 2, 5);
+        int changesPerCycle = intArg(args, 3, 100);
+        long latencyMs = intArg(args, 4, 0);
+        double failureRate = args.length > 5 ? Double.parseDouble(args[5]) : 0;
+
+        FakeTasksServer server = new FakeTasksServer(42);
+        server.addLists(listCount, tasksPerList);
+        server.setLatency(latencyMs);
+        server.setFailureRate(failureRate);
+        String rootUrl = server.start();
+
+        File cacheDirectory = Files.createTempDirectory("taskification-loadtest").toFile();
+        OkHttpTransport transport = OkHttpTransport.create(cacheDirectory);
+        Tasks service = new Tasks.Builder(transport, JacksonFactory.getDefaultInstance(), null)
+                .setRootUrl(rootUrl)
+                .setApplicationName("Tasks Notification load test")
+                .build();
+        TaskListSyncer syncer = new TaskListSyncer(TaskListSyncer.NEVER_CANCELLED);
+        DueDateLabeller labeller = new DueDateLabeller(LocalDate.now());
+
+        List<String> listIds = new ArrayList<>();
+        for (int i = 0; i < listCount; i++) {
+            listIds.add("list" + i);
+        }
+        Map<String, Set<String>> noExclusions = Collections.emptyMap();
+
+        System.out.printf("%d lists of %d tasks, %d cycles of %d changes, %dms latency, %.2f failure rate%n",
+                listCount, tasksPerList, cycles, changesPerCycle, latencyMs, failureRate);
+        System.out.printf("%5s %10s %12s %9s %8s %7s %12s%n", "cycle", "time (ms)", "bytes", "requests", "tasks", "errors", "peak heap");
+        try {
+            for (int cycle = 0; cycle < cycles; cycle++) {
+                if (cycle > 0) {
+                    server.mutate(changesPerCycle);
+                }
+                resetPeakHeap();
+                long bytesBefore = SyncMetrics.getHttpBytes();
+                long requestsBefore = server.getRequestCount();
+                long start = System.nanoTime();
+
+                SyncMetrics.onSyncStarted();
+                TaskListSyncer.BatchResult result = syncer.syncAll(service, listIds, noExclusions);
+                int tasks = 0;
+                for (List<Task> listTasks : result.tasks.values()) {
+                    long renderStart = SyncMetrics.start();
+                    RENDERER.render(listTasks, labeller);
+                    SyncMetrics.record(SyncMetrics.Stage.RENDER, renderStart);
+                    tasks += Task.treeSize(listTasks);
+                }
+                boolean failed = result.taskLists == null || !result.errors.isEmpty();
+                SyncMetrics.onSyncFinished(true, failed);
+
+                long elapsedMs = (System.nanoTime() - start) / 1000000;
+                System.out.printf("%5d %10d %12d %9d %8d %7d %10dKB%n",
+                        cycle,
+                        elapsedMs,
+                        SyncMetrics.getHttpBytes() - bytesBefore,
+                        server.getRequestCount() - requestsBefore,
+                        tasks,
+                        result.errors.size(),
+                        getPeakHeap() / 1024);
+            }
+        } finally {
+            server.stop();
+        }
+
+        System.out.println();
+        PrintWriter writer = new PrintWriter(System.out);
+        SyncMetrics.dump(writer);
+        writer.flush();
+        // the transport's connection pool threads would otherwise keep the JVM alive for minutes
+        System.exit(0);
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    // the sum of each heap pool's peak, which can overstate the true peak as pools peak at
+    // different times, but never understates it
+    private static long getPeakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static int intArg(String[] args, int index, int fallback) {
+        return args.length > index ? Integer.parseInt(args[index]) : fallback;
+    }
+}